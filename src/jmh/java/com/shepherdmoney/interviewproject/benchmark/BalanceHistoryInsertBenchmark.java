@@ -0,0 +1,126 @@
+package com.shepherdmoney.interviewproject.benchmark;
+
+import com.shepherdmoney.interviewproject.model.BalanceHistory;
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.model.User;
+import com.shepherdmoney.interviewproject.repository.BalanceHistoryRepository;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Balance history rows inserted per second when a card's year of history is written in one
+ * transaction, either with a save per row or with one saveAll, and with JDBC batching off
+ * (jdbcBatchSize 0) or at the configured size. A save per row without batching is how rows were
+ * written before they were batched. With transport tcp the database is reached through an H2
+ * server on localhost, so that every statement sent costs a round trip as with a real server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BalanceHistoryInsertBenchmark {
+
+    private static final int ROWS = 365;
+
+    @Param({"0", "50"})
+    public int jdbcBatchSize;
+
+    @Param({"mem", "tcp"})
+    public String transport;
+
+    private Server server;
+    private ConfigurableApplicationContext context;
+    private BalanceHistoryRepository balanceHistoryRepository;
+    private TransactionTemplate transactionTemplate;
+    private CreditCard creditCard;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        String batchSize = "spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize;
+        if (transport.equals("tcp")) {
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            server = Server.createTcpServer("-tcpPort", String.valueOf(port), "-ifNotExists").start();
+            context = BenchmarkContext.start(batchSize,
+                    "spring.datasource.url=jdbc:h2:tcp://localhost:" + port + "/mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        } else {
+            context = BenchmarkContext.start(batchSize);
+        }
+        balanceHistoryRepository = context.getBean(BalanceHistoryRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        User user = new User();
+        user.setName("benchmark");
+        user.setEmail("benchmark@example.com");
+        user = context.getBean(UserRepository.class).save(user);
+
+        creditCard = new CreditCard();
+        creditCard.setIssuanceBank("Benchmark Bank");
+        creditCard.setNumber("4111111111111111");
+        creditCard.setOwner(user);
+        creditCard = context.getBean(CreditCardRepository.class).save(creditCard);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void saveEach() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (BalanceHistory row : year()) {
+                balanceHistoryRepository.save(row);
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void saveAll() {
+        transactionTemplate.executeWithoutResult(status -> balanceHistoryRepository.saveAll(year()));
+    }
+
+    private List<BalanceHistory> year() {
+        LocalDate first = LocalDate.now().minusDays(ROWS - 1);
+        List<BalanceHistory> rows = new ArrayList<>(ROWS);
+        for (int day = 0; day < ROWS; day++) {
+            BalanceHistory row = new BalanceHistory();
+            row.setDate(first.plusDays(day));
+            row.setDelta(day == 0 ? 1000 : 1);
+            row.setCreditCard(creditCard);
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,47 @@
+package com.shepherdmoney.interviewproject.benchmark;
+
+import com.shepherdmoney.interviewproject.model.BalanceHistoryCodec;
+import com.shepherdmoney.interviewproject.model.BalanceHistorySnapshot;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decoding of serialized balance histories in the legacy balanceHistoryString format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BalanceHistoryParseBenchmark {
+
+    @Param({"30", "365", "3650"})
+    public int historyLength;
+
+    private String legacyJson;
+
+    @Setup
+    public void setUp() {
+        // Same layout as the old format: today first, then the older days in chronological order
+        LocalDate today = LocalDate.now();
+        StringBuilder builder = new StringBuilder("[[\"").append(today).append("\",").append(historyLength).append(".0]");
+        for (int day = historyLength - 1; day > 0; day--) {
+            builder.append(",[\"").append(today.minusDays(day)).append("\",").append(historyLength - day).append(".0]");
+        }
+        legacyJson = builder.append(']').toString();
+    }
+
+    @Benchmark
+    public BalanceHistorySnapshot decodeLegacy() throws IOException {
+        return BalanceHistoryCodec.decode(legacyJson);
+    }
+}
@@ -0,0 +1,96 @@
+package com.shepherdmoney.interviewproject.benchmark;
+
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.model.User;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.service.BalanceHistoryService;
+import com.shepherdmoney.interviewproject.vo.request.UpdateBalancePayload;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * customAddBalanceEntry on a card whose history already has historyLength days, applying
+ * batchSize backdated updates per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BalanceUpdateBenchmark {
+
+    private static final String CARD_NUMBER = "4111111111111111";
+
+    @Param({"30", "365", "3650"})
+    public int historyLength;
+
+    @Param({"1", "30"})
+    public int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private BalanceHistoryService balanceHistoryService;
+    private LocalDate firstDate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        balanceHistoryService = context.getBean(BalanceHistoryService.class);
+
+        User user = new User();
+        user.setName("benchmark");
+        user.setEmail("benchmark@example.com");
+        user = context.getBean(UserRepository.class).save(user);
+
+        CreditCard creditCard = new CreditCard();
+        creditCard.setIssuanceBank("Benchmark Bank");
+        creditCard.setNumber(CARD_NUMBER);
+        creditCard.setOwner(user);
+        context.getBean(CreditCardRepository.class).save(creditCard);
+
+        // Every day gets a different balance so that the whole history is stored
+        firstDate = LocalDate.now().minusDays(historyLength - 1);
+        List<UpdateBalancePayload> history = new ArrayList<>();
+        for (int day = 0; day < historyLength; day++) {
+            history.add(payload(firstDate.plusDays(day), 1000 + day));
+        }
+        balanceHistoryService.customAddBalanceEntry(history);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int backdatedUpdate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<UpdateBalancePayload> payloads = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            payloads.add(payload(firstDate.plusDays(random.nextInt(historyLength)), random.nextInt(5000)));
+        }
+        return balanceHistoryService.customAddBalanceEntry(payloads);
+    }
+
+    private static UpdateBalancePayload payload(LocalDate date, double amount) {
+        UpdateBalancePayload payload = new UpdateBalancePayload();
+        payload.setCreditCardNumber(CARD_NUMBER);
+        payload.setBalanceDate(date);
+        payload.setBalanceAmount(amount);
+        return payload;
+    }
+}
@@ -0,0 +1,41 @@
+package com.shepherdmoney.interviewproject.benchmark;
+
+import com.shepherdmoney.interviewproject.InterviewProjectApplication;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application without the web server, on a private in-memory H2 database.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Properties are passed as command line arguments, default properties would be overridden
+     * by application.properties. A property given twice would be joined into a list, so the
+     * given properties replace the defaults rather than being appended to them.
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        Map<String, String> args = new LinkedHashMap<>();
+        args.put("spring.datasource.url", "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        args.put("spring.jpa.hibernate.ddl-auto", "create-drop");
+        args.put("logging.level.root", "WARN");
+        for (String property : properties) {
+            int separator = property.indexOf('=');
+            args.put(property.substring(0, separator), property.substring(separator + 1));
+        }
+        return new SpringApplicationBuilder(InterviewProjectApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.entrySet().stream()
+                        .map(arg -> "--" + arg.getKey() + "=" + arg.getValue())
+                        .toArray(String[]::new));
+    }
+}
@@ -0,0 +1,104 @@
+package com.shepherdmoney.interviewproject.benchmark;
+
+import com.shepherdmoney.interviewproject.controller.CreditCardController;
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.model.User;
+import com.shepherdmoney.interviewproject.repository.CreditCardOwnership;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.service.CreditCardLookupCache;
+import com.shepherdmoney.interviewproject.vo.response.CreditCardView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Card number lookups and the /credit-card:all mapping, over cardCount cards split among
+ * users owning cardsPerUser cards each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CardLookupBenchmark {
+
+    @Param({"1000", "100000"})
+    public int cardCount;
+
+    @Param({"10", "500"})
+    public int cardsPerUser;
+
+    private ConfigurableApplicationContext context;
+    private CreditCardRepository creditCardRepository;
+    private CreditCardLookupCache creditCardLookupCache;
+    private CreditCardController creditCardController;
+    private List<Integer> userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        creditCardRepository = context.getBean(CreditCardRepository.class);
+        creditCardLookupCache = context.getBean(CreditCardLookupCache.class);
+        creditCardController = context.getBean(CreditCardController.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        userIds = new ArrayList<>();
+        List<CreditCard> creditCards = new ArrayList<>();
+        User user = null;
+        for (int i = 0; i < cardCount; i++) {
+            if (i % cardsPerUser == 0) {
+                user = new User();
+                user.setName("user" + i);
+                user.setEmail("user" + i + "@example.com");
+                user = userRepository.save(user);
+                userIds.add(user.getId());
+            }
+            CreditCard creditCard = new CreditCard();
+            creditCard.setIssuanceBank("Benchmark Bank");
+            creditCard.setNumber(cardNumber(i));
+            creditCard.setOwner(user);
+            creditCards.add(creditCard);
+        }
+        creditCardRepository.saveAll(creditCards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<CreditCard> findByNumber() {
+        return creditCardRepository.findByNumber(cardNumber(ThreadLocalRandom.current().nextInt(cardCount)));
+    }
+
+    @Benchmark
+    public Optional<CreditCardOwnership> cachedLookup() {
+        return creditCardLookupCache.get(cardNumber(ThreadLocalRandom.current().nextInt(cardCount)));
+    }
+
+    @Benchmark
+    public ResponseEntity<List<CreditCardView>> getAllCardOfUser() {
+        int userId = userIds.get(ThreadLocalRandom.current().nextInt(userIds.size()));
+        return creditCardController.getAllCardOfUser(userId, null, null, null);
+    }
+
+    private static String cardNumber(int i) {
+        return String.format("4000%012d", i);
+    }
+}
@@ -0,0 +1,88 @@
+package com.shepherdmoney.interviewproject.benchmark;
+
+import com.shepherdmoney.interviewproject.model.CardNumberKey;
+import com.shepherdmoney.interviewproject.repository.CreditCardOwnership;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Card number lookups against the unique number index and the packed number key index, at
+ * table sizes where the indexes no longer fit in H2's page cache. The table lives in a file
+ * database in a temporary directory and is filled with set-based inserts, ten cards per user,
+ * since going through the ORM would take hours at the larger sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CardNumberIndexBenchmark {
+
+    private static final int CARDS_PER_USER = 10;
+
+    @Param({"1000000", "10000000", "50000000"})
+    public int cardCount;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private CreditCardRepository creditCardRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("card-number-index");
+        context = BenchmarkContext.start("spring.datasource.url=jdbc:h2:file:" + directory.resolve("cards"));
+        creditCardRepository = context.getBean(CreditCardRepository.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("insert into my_user (id, name, email, deleted) "
+                + "select x, 'user' || x, 'user' || x || '@example.com', false from system_range(1, ?)",
+                cardCount / CARDS_PER_USER);
+        jdbcTemplate.update("insert into credit_card (id, issuance_bank, number, number_key, version, user_id) "
+                + "select x + 1, 'Benchmark Bank', '4000' || lpad(cast(x as varchar), 12, '0'), cast(? as bigint) + x, 0, x / ? + 1 "
+                + "from system_range(0, ? - 1)",
+                CardNumberKey.encode(cardNumber(0)), CARDS_PER_USER, cardCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Optional<CreditCardOwnership> findOwnershipByNumber() {
+        return creditCardRepository.findOwnershipByNumber(cardNumber(ThreadLocalRandom.current().nextInt(cardCount)));
+    }
+
+    @Benchmark
+    public Optional<CreditCardOwnership> findOwnershipByNumberKey() {
+        return creditCardRepository.findOwnershipByNumberKey(CardNumberKey.encode(cardNumber(ThreadLocalRandom.current().nextInt(cardCount))));
+    }
+
+    private static String cardNumber(int i) {
+        return String.format("4000%012d", i);
+    }
+}
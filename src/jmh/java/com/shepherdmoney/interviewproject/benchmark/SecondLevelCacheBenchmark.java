@@ -0,0 +1,118 @@
+package com.shepherdmoney.interviewproject.benchmark;
+
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.model.User;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * User and card list reads with and without the second-level cache. Besides the time per
+ * operation, the counters report the reads and the JDBC statements prepared during an
+ * iteration, their ratio is the number of queries per read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SecondLevelCacheBenchmark {
+
+    @Param({"true", "false"})
+    public boolean secondLevelCache;
+
+    @Param({"1000"})
+    public int userCount;
+
+    @Param({"10"})
+    public int cardsPerUser;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StatementCounter {
+        public long reads;
+        public long statements;
+    }
+
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+    private TransactionTemplate transactionTemplate;
+    private Statistics statistics;
+    private List<Integer> userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("spring.jpa.properties.hibernate.cache.use_second_level_cache=" + secondLevelCache);
+        userRepository = context.getBean(UserRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        CreditCardRepository creditCardRepository = context.getBean(CreditCardRepository.class);
+
+        userIds = new ArrayList<>();
+        List<CreditCard> creditCards = new ArrayList<>();
+        for (int i = 0; i < userCount; i++) {
+            User user = new User();
+            user.setName("user" + i);
+            user.setEmail("user" + i + "@example.com");
+            user = userRepository.save(user);
+            userIds.add(user.getId());
+            for (int j = 0; j < cardsPerUser; j++) {
+                CreditCard creditCard = new CreditCard();
+                creditCard.setIssuanceBank("Benchmark Bank");
+                creditCard.setNumber(String.format("4000%012d", i * cardsPerUser + j));
+                creditCard.setOwner(user);
+                creditCards.add(creditCard);
+            }
+        }
+        creditCardRepository.saveAll(creditCards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<User> findUser(StatementCounter counter) {
+        long before = statistics.getPrepareStatementCount();
+        Optional<User> user = userRepository.findById(randomUserId());
+        counter.statements += statistics.getPrepareStatementCount() - before;
+        counter.reads++;
+        return user;
+    }
+
+    @Benchmark
+    public Integer findUserCards(StatementCounter counter) {
+        int userId = randomUserId();
+        long before = statistics.getPrepareStatementCount();
+        Integer cards = transactionTemplate.execute(status -> userRepository.findById(userId).get().getCreditCards().size());
+        counter.statements += statistics.getPrepareStatementCount() - before;
+        counter.reads++;
+        return cards;
+    }
+
+    private int randomUserId() {
+        return userIds.get(ThreadLocalRandom.current().nextInt(userIds.size()));
+    }
+}
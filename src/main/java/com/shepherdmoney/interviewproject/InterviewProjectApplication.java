@@ -1,14 +1,20 @@
 package com.shepherdmoney.interviewproject;
 
+import com.shepherdmoney.interviewproject.config.BalanceHistoryExportRunner;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
 @SpringBootApplication
 @EnableJpaRepositories
 public class InterviewProjectApplication {
     public static void main(String[] args) {
-        SpringApplication.run(InterviewProjectApplication.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(InterviewProjectApplication.class, args);
+        if (context.getBean(BalanceHistoryExportRunner.class).isExported()) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 
 }
@@ -0,0 +1,66 @@
+package com.shepherdmoney.interviewproject.config;
+
+import com.shepherdmoney.interviewproject.service.BalanceHistoryExportService;
+import com.shepherdmoney.interviewproject.vo.response.BalanceExportResult;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Command line export of the balance history. Started with
+ * --export-balance-history=&lt;file&gt;, the application writes the export and exits. Combine
+ * with --spring.main.web-application-type=none to skip starting the web server. The runner
+ * only records the outcome; the application's main method shuts down with its exit code.
+ */
+@Slf4j
+@Component
+public class BalanceHistoryExportRunner implements ApplicationRunner, ExitCodeGenerator {
+
+    private static final String OPTION = "export-balance-history";
+
+    private final BalanceHistoryExportService balanceHistoryExportService;
+    private boolean exported;
+    private int exitCode;
+
+    @Autowired
+    public BalanceHistoryExportRunner(BalanceHistoryExportService balanceHistoryExportService) {
+        this.balanceHistoryExportService = balanceHistoryExportService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> targets = args.getOptionValues(OPTION);
+        if (targets == null || targets.isEmpty()) {
+            return;
+        }
+        exported = true;
+        try {
+            BalanceExportResult result = balanceHistoryExportService.export(Paths.get(targets.get(0)));
+            log.info("Exported {} balance history rows to {}", result.getRows(), result.getFile());
+        } catch (IOException e) {
+            log.error("Exporting the balance history to {} failed", targets.get(0), e);
+            exitCode = 1;
+        }
+    }
+
+    /**
+     * Whether the application was started to export the balance history and should exit.
+     */
+    public boolean isExported() {
+        return exported;
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+}
@@ -0,0 +1,26 @@
+package com.shepherdmoney.interviewproject.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class BalanceUpdateConfig {
+
+    /**
+     * Bounded pool used to process the card groups of a balance update batch concurrently.
+     * When the queue is full the submitting request thread runs the task itself, which
+     * throttles very large uploads instead of queueing them without limit.
+     */
+    @Bean(name = "balanceUpdateExecutor", destroyMethod = "shutdown")
+    public ExecutorService balanceUpdateExecutor(@Value("${balance-update.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
@@ -0,0 +1,25 @@
+package com.shepherdmoney.interviewproject.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class PortfolioConfig {
+
+    /**
+     * Bounded pool loading the card indexes of users with many cards in parallel. As with the
+     * balance update pool, a full queue makes the requesting thread load the index itself.
+     */
+    @Bean(name = "portfolioExecutor", destroyMethod = "shutdown")
+    public ExecutorService portfolioExecutor(@Value("${portfolio.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
@@ -0,0 +1,20 @@
+package com.shepherdmoney.interviewproject.config;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class UserDeletionConfig {
+
+    /**
+     * Single worker removing the data of deleted users, so that purges never compete with
+     * each other for locks. Failed purges are scheduled on it again after a delay.
+     */
+    @Bean(name = "userDeletionExecutor", destroyMethod = "shutdown")
+    public ScheduledExecutorService userDeletionExecutor() {
+        return Executors.newSingleThreadScheduledExecutor();
+    }
+}
@@ -1,57 +1,122 @@
 package com.shepherdmoney.interviewproject.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.shepherdmoney.interviewproject.model.BalanceHistory;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.shepherdmoney.interviewproject.model.BalanceIndex;
+import com.shepherdmoney.interviewproject.model.BalanceRollupPeriod;
 import com.shepherdmoney.interviewproject.model.CreditCard;
 import com.shepherdmoney.interviewproject.model.User;
-import com.shepherdmoney.interviewproject.repository.BalanceHistoryRepository;
+import com.shepherdmoney.interviewproject.repository.BalanceChange;
+import com.shepherdmoney.interviewproject.repository.CreditCardOwnership;
 import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
 import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.service.BalanceHistoryExportService;
+import com.shepherdmoney.interviewproject.service.BalanceHistoryService;
+import com.shepherdmoney.interviewproject.service.BalanceQueryService;
+import com.shepherdmoney.interviewproject.service.BalanceRollupService;
+import com.shepherdmoney.interviewproject.service.BalanceUpdateCoordinator;
+import com.shepherdmoney.interviewproject.service.BalanceUpdateDeduplicator;
+import com.shepherdmoney.interviewproject.service.BalanceWriteBuffer;
+import com.shepherdmoney.interviewproject.service.CreditCardLookupCache;
+import com.shepherdmoney.interviewproject.service.CreditCardProvisioningService;
+import com.shepherdmoney.interviewproject.service.UserPortfolioService;
+import com.shepherdmoney.interviewproject.store.BalanceHistoryStore;
 import com.shepherdmoney.interviewproject.vo.request.AddCreditCardToUserPayload;
 import com.shepherdmoney.interviewproject.vo.request.UpdateBalancePayload;
+import com.shepherdmoney.interviewproject.vo.response.BalanceUpdateResult;
+import com.shepherdmoney.interviewproject.vo.response.BalanceExportResult;
+import com.shepherdmoney.interviewproject.vo.response.BalanceRollupView;
+import com.shepherdmoney.interviewproject.vo.response.BalanceView;
+import com.shepherdmoney.interviewproject.vo.response.CacheStatsView;
+import com.shepherdmoney.interviewproject.vo.response.CardProvisioningResult;
 import com.shepherdmoney.interviewproject.vo.response.CreditCardView;
 
-import net.minidev.json.JSONArray;
-
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.configurationprocessor.json.JSONException;
-import org.springframework.boot.configurationprocessor.json.JSONObject;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.OptionalDouble;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 @RestController
 public class CreditCardController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final CreditCardRepository creditCardRepository;
     private final UserRepository userRepository;
-    private final BalanceHistoryRepository balanceHistoryRepository; 
+    private final BalanceHistoryService balanceHistoryService;
+    private final BalanceUpdateCoordinator balanceUpdateCoordinator;
+    private final BalanceUpdateDeduplicator balanceUpdateDeduplicator;
+    private final Optional<BalanceWriteBuffer> balanceWriteBuffer;
+    private final CreditCardLookupCache creditCardLookupCache;
+    private final BalanceQueryService balanceQueryService;
+    private final BalanceRollupService balanceRollupService;
+    private final BalanceHistoryExportService balanceHistoryExportService;
+    private final UserPortfolioService userPortfolioService;
+    private final BalanceHistoryStore balanceHistoryStore;
+    private final CreditCardProvisioningService creditCardProvisioningService;
+    private final ExecutorService balanceUpdateExecutor;
+    private final ObjectMapper objectMapper;
+    private final int streamBatchSize;
 
     @Autowired
-    public CreditCardController(CreditCardRepository creditCardRepository, UserRepository userRepository, BalanceHistoryRepository balanceHistoryRepository) {
+    public CreditCardController(CreditCardRepository creditCardRepository, UserRepository userRepository, BalanceHistoryService balanceHistoryService,
+                                BalanceUpdateCoordinator balanceUpdateCoordinator, BalanceUpdateDeduplicator balanceUpdateDeduplicator, Optional<BalanceWriteBuffer> balanceWriteBuffer, CreditCardLookupCache creditCardLookupCache, BalanceQueryService balanceQueryService,
+                                BalanceRollupService balanceRollupService, BalanceHistoryExportService balanceHistoryExportService,
+                                UserPortfolioService userPortfolioService, BalanceHistoryStore balanceHistoryStore,
+                                CreditCardProvisioningService creditCardProvisioningService,
+                                @Qualifier("balanceUpdateExecutor") ExecutorService balanceUpdateExecutor, ObjectMapper objectMapper,
+                                @Value("${balance-update.stream-batch-size:10000}") int streamBatchSize) {
         this.creditCardRepository = creditCardRepository;
         this.userRepository = userRepository;
-        this.balanceHistoryRepository = balanceHistoryRepository;
+        this.balanceHistoryService = balanceHistoryService;
+        this.balanceUpdateCoordinator = balanceUpdateCoordinator;
+        this.balanceUpdateDeduplicator = balanceUpdateDeduplicator;
+        this.balanceWriteBuffer = balanceWriteBuffer;
+        this.creditCardLookupCache = creditCardLookupCache;
+        this.balanceQueryService = balanceQueryService;
+        this.balanceRollupService = balanceRollupService;
+        this.balanceHistoryExportService = balanceHistoryExportService;
+        this.userPortfolioService = userPortfolioService;
+        this.balanceHistoryStore = balanceHistoryStore;
+        this.creditCardProvisioningService = creditCardProvisioningService;
+        this.balanceUpdateExecutor = balanceUpdateExecutor;
+        this.objectMapper = objectMapper;
+        this.streamBatchSize = streamBatchSize;
     }
 
     @PostMapping("/credit-card")
     public ResponseEntity<Integer> addCreditCardToUser(@RequestBody AddCreditCardToUserPayload payload) {
         try {
             Optional<User> optionalUser = userRepository.findById(payload.getUserId());
-            if (optionalUser.isPresent()) {
+            if (optionalUser.isPresent() && !optionalUser.get().isDeleted()) {
                 User user = optionalUser.get();
                 CreditCard creditCard = new CreditCard();
                 creditCard.setIssuanceBank(payload.getCardIssuanceBank());
@@ -60,43 +125,94 @@ public class CreditCardController {
                 creditCardRepository.save(creditCard);
                 user.getCreditCards().add(creditCard);
                 userRepository.save(user);
+                creditCardLookupCache.invalidate(creditCard.getNumber());
+                userPortfolioService.invalidate(user.getId());
                 return ResponseEntity.ok(creditCard.getId());
             } else {
                 return ResponseEntity.badRequest().body(-1);
             }
+        } catch (DataIntegrityViolationException e) {
+            // A card with this number already exists, rejected by the unique index
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(-1);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(-1);
         }
     }
 
 
+    /**
+     * Adds many cards at once. Every record gets its own result, a record is rejected if its
+     * user does not exist or its card number is already taken. Answers 200 if every card was
+     * added, 400 if none was and 207 if only some were.
+     */
+    @PostMapping("/credit-card:bulk")
+    public ResponseEntity<List<CardProvisioningResult>> addCreditCardsToUsers(@RequestBody AddCreditCardToUserPayload[] payloads) {
+        try {
+            List<CardProvisioningResult> results = creditCardProvisioningService.addCreditCards(Arrays.asList(payloads));
+            long added = results.stream().filter(result -> result.getError() == null).count();
+            HttpStatus status = added == results.size() ? HttpStatus.OK
+                    : added == 0 ? HttpStatus.BAD_REQUEST : HttpStatus.MULTI_STATUS;
+            return ResponseEntity.status(status).body(results);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
+    /**
+     * Cards of a user ordered by id. With afterId the page starts right after that card (keyset
+     * pagination, pass the id of the last card of the previous page), otherwise page and size
+     * select an offset page, and without either all cards are returned.
+     */
     @GetMapping("/credit-card:all")
-    public ResponseEntity<List<CreditCardView>> getAllCardOfUser(@RequestParam int userId) {
+    public ResponseEntity<List<CreditCardView>> getAllCardOfUser(@RequestParam int userId,
+                                                                 @RequestParam(required = false) Integer page,
+                                                                 @RequestParam(required = false) Integer size,
+                                                                 @RequestParam(required = false) Integer afterId) {
         try {
-            Optional<User> optionalUser = userRepository.findById(userId);
-            if (optionalUser.isPresent()) {
-                List<CreditCard> creditCards = optionalUser.get().getCreditCards();
-                List<CreditCardView> creditCardViews = creditCards.stream()
-                        .map(creditCard -> new CreditCardView(creditCard.getIssuanceBank(), creditCard.getNumber()))
-                        .collect(Collectors.toList());
-                return ResponseEntity.ok(creditCardViews);
-            } else {
-                return ResponseEntity.ok().body(List.of());
+            // Single projection query, an unknown user simply has no cards
+            if (afterId != null) {
+                return ResponseEntity.ok(creditCardRepository.findViewsByOwnerIdAfter(userId, afterId, PageRequest.of(0, pageSize(size))));
             }
+            Pageable pageable = size == null ? Pageable.unpaged() : PageRequest.of(page == null ? 0 : page, size);
+            return ResponseEntity.ok(creditCardRepository.findViewsByOwnerId(userId, pageable));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
     }
 
+    /**
+     * All cards of a user, read in keyset pages and written to the response as they are read,
+     * so memory use does not depend on the number of cards.
+     */
+    @GetMapping("/credit-card:all-stream")
+    public ResponseEntity<StreamingResponseBody> streamAllCardOfUser(@RequestParam int userId) {
+        StreamingResponseBody body = outputStream -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            List<CreditCardView> cards = creditCardRepository.findViewsByOwnerIdAfter(userId, 0, PageRequest.of(0, MAX_PAGE_SIZE));
+            while (!cards.isEmpty()) {
+                for (CreditCardView card : cards) {
+                    generator.writeObject(card);
+                }
+                generator.flush();
+                int lastId = cards.get(cards.size() - 1).getId();
+                cards = cards.size() < MAX_PAGE_SIZE ? List.of()
+                        : creditCardRepository.findViewsByOwnerIdAfter(userId, lastId, PageRequest.of(0, MAX_PAGE_SIZE));
+            }
+            generator.writeEndArray();
+            generator.close();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
 
     @GetMapping("/credit-card:user-id")
     public ResponseEntity<Integer> getUserIdForCreditCard(@RequestParam String creditCardNumber) {
         try {
-            Optional<CreditCard> optionalCreditCard = creditCardRepository.findByNumber(creditCardNumber);
-            if (optionalCreditCard.isPresent()) {
-                CreditCard creditCard = optionalCreditCard.get();
-                User user = creditCard.getOwner();
-                return ResponseEntity.ok(user.getId());
+            Optional<CreditCardOwnership> ownership = creditCardLookupCache.get(creditCardNumber);
+            if (ownership.isPresent()) {
+                return ResponseEntity.ok(ownership.get().getOwnerId());
             } else {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(-1);
             }
@@ -105,36 +221,208 @@ public class CreditCardController {
         }
     }
 
-    public static List<List<Object>> parseJsonToListOfLists(String jsonString) {
-        ObjectMapper objectMapper = new ObjectMapper();
+    @GetMapping("/credit-card:lookup-cache-stats")
+    public ResponseEntity<CacheStatsView> getLookupCacheStats() {
+        CacheStats stats = creditCardLookupCache.stats();
+        return ResponseEntity.ok(new CacheStatsView(creditCardLookupCache.size(), stats.hitCount(), stats.missCount(),
+                stats.evictionCount(), stats.hitRate()));
+    }
+
+    @GetMapping("/credit-card:balance-history")
+    public ResponseEntity<List<BalanceView>> getBalanceHistory(@RequestParam String creditCardNumber) {
         try {
-            return objectMapper.readValue(jsonString, new com.fasterxml.jackson.core.type.TypeReference<List<List<Object>>>() {});
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return null;
+            Optional<List<BalanceView>> balanceHistory = balanceHistoryService.getBalanceHistory(creditCardNumber);
+            if (balanceHistory.isPresent()) {
+                return ResponseEntity.ok(balanceHistory.get());
+            } else {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
     }
 
+    @GetMapping("/credit-card:balance")
+    public ResponseEntity<BalanceView> getBalanceOnDate(@RequestParam String creditCardNumber,
+                                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        try {
+            Optional<BalanceIndex> index = balanceQueryService.indexOf(creditCardNumber);
+            if (index.isPresent()) {
+                OptionalDouble balance = index.get().balanceOn(date);
+                if (balance.isPresent()) {
+                    return ResponseEntity.ok(new BalanceView(date, balance.getAsDouble()));
+                }
+            }
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
 
+    @GetMapping("/credit-card:balance-closest")
+    public ResponseEntity<BalanceView> getClosestBalance(@RequestParam String creditCardNumber,
+                                                         @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        try {
+            Optional<BalanceView> balance = balanceQueryService.indexOf(creditCardNumber)
+                    .flatMap(index -> index.closestOnOrAfter(date, LocalDate.now()));
+            if (balance.isPresent()) {
+                return ResponseEntity.ok(balance.get());
+            } else {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
+    /**
+     * Weekly or monthly balance statistics of every period overlapping from..to, up to the
+     * current period, which covers the days up to today.
+     */
+    @GetMapping("/credit-card:balance-rollups")
+    public ResponseEntity<List<BalanceRollupView>> getBalanceRollups(@RequestParam String creditCardNumber,
+                                                                     @RequestParam BalanceRollupPeriod period,
+                                                                     @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                     @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            Optional<List<BalanceRollupView>> rollups = balanceRollupService.rollupsOf(creditCardNumber, period, from, to);
+            if (rollups.isPresent()) {
+                return ResponseEntity.ok(rollups.get());
+            } else {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
+    /**
+     * Month-end balance, average daily balance and maximum balance over the whole months
+     * overlapping from..to.
+     */
+    @GetMapping("/credit-card:balance-summary")
+    public ResponseEntity<BalanceRollupView> getBalanceSummary(@RequestParam String creditCardNumber,
+                                                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            Optional<BalanceRollupView> summary = balanceRollupService.summaryOf(creditCardNumber, from, to);
+            if (summary.isPresent()) {
+                return ResponseEntity.ok(summary.get());
+            } else {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
+    /**
+     * Stored change points of a card in chronological order, a keyset page of up to size changes
+     * starting right after the date given as after (pass the date of the last change of the
+     * previous page).
+     */
+    @GetMapping("/credit-card:balance-changes")
+    public ResponseEntity<List<BalanceChange>> getBalanceChanges(@RequestParam String creditCardNumber,
+                                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate after,
+                                                                 @RequestParam(required = false) Integer size) {
+        try {
+            Optional<CreditCardOwnership> ownership = creditCardLookupCache.get(creditCardNumber);
+            if (ownership.isPresent()) {
+                return ResponseEntity.ok(balanceHistoryStore.findChanges(ownership.get().getCardId(), after, pageSize(size)));
+            } else {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
+    /**
+     * Same days as /credit-card:balance-history in chronological order, written to the response
+     * as they are read from the card's index instead of being collected first.
+     */
+    @GetMapping("/credit-card:balance-history-stream")
+    public ResponseEntity<StreamingResponseBody> streamBalanceHistory(@RequestParam String creditCardNumber) {
+        return getBalanceRange(creditCardNumber, LocalDate.MIN, LocalDate.MAX);
+    }
+
+    /**
+     * Daily balances between from and to (inclusive), written to the response as they are read
+     * from the card's index.
+     */
+    @GetMapping("/credit-card:balance-range")
+    public ResponseEntity<StreamingResponseBody> getBalanceRange(@RequestParam String creditCardNumber,
+                                                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        Optional<BalanceIndex> index = balanceQueryService.indexOf(creditCardNumber);
+        if (!index.isPresent()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        BalanceIndex balanceIndex = index.get();
+        LocalDate today = LocalDate.now();
+        StreamingResponseBody body = outputStream -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            balanceIndex.forEachDay(from, to, today, (epochDay, balance) -> {
+                generator.writeStartObject();
+                generator.writeStringField("date", LocalDate.ofEpochDay(epochDay).toString());
+                generator.writeNumberField("balance", balance);
+                generator.writeEndObject();
+            });
+            generator.writeEndArray();
+            generator.close();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Writes the balance history of all cards into a new Arrow IPC file in the export directory
+     * on the server, see BalanceHistoryExportService.
+     */
+    @PostMapping("/credit-card:balance-history-export")
+    public ResponseEntity<BalanceExportResult> exportBalanceHistory() {
+        try {
+            return ResponseEntity.ok(balanceHistoryExportService.export());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
+
+    /**
+     * Requests sent with an Idempotency-Key header are applied once per key, a retry with the
+     * same key and body gets the first response without being parsed again.
+     */
     @PostMapping("/credit-card:update-balance")
-    public ResponseEntity<String> addNewBalanceEntry(@RequestBody UpdateBalancePayload[] payloads) {
+    public ResponseEntity<String> addNewBalanceEntry(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                     @RequestBody byte[] body) {
+        if (idempotencyKey == null) {
+            return addNewBalanceEntry(body);
+        }
+        return balanceUpdateDeduplicator.once(idempotencyKey, body, () -> addNewBalanceEntry(body))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Idempotency key already used for a different request"));
+    }
+
+    private ResponseEntity<String> addNewBalanceEntry(byte[] body) {
+        UpdateBalancePayload[] payloads;
+        try {
+            payloads = objectMapper.readValue(body, UpdateBalancePayload[].class);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid balance update payload");
+        }
 
         // Updating the balance of all the credit cards mentioned in the payload.
         // If a credit card is not found, it does not do anything. 
         // But if there is another credit card mentioned that is stored in the database, it will update the balances of that credit card.
-        // I have stored a sorted list in the credit card list. But the first element is always the current date.
+        // The balance history of each card is kept as a sorted, date-indexed timeline (see BalanceTimeline).
 
-        Map<String, List<UpdateBalancePayload>> groupedPayload = new HashMap<>();
-        for (UpdateBalancePayload updatePayload : payloads) {
-            groupedPayload.computeIfAbsent(updatePayload.getCreditCardNumber(), k -> new ArrayList<>())
-                    .add(updatePayload);
-        }
+        Map<String, List<UpdateBalancePayload>> groupedPayload = groupByCardNumber(Arrays.asList(payloads));
 
         int isValidCall = 1;
         String error = "";
         for(Map.Entry<String, List<UpdateBalancePayload>> entry : groupedPayload.entrySet()){
             String key = entry.getKey();
-            if(customAddBalanceEntry(entry.getValue()) == -1){
+            if(balanceUpdateCoordinator.apply(key, entry.getValue()) == -1){
                 isValidCall = -1;
                 error +=  "\n"+key;
             }
@@ -146,222 +434,136 @@ public class CreditCardController {
         }
     }
 
-    public int customAddBalanceEntry(List<UpdateBalancePayload> payloads){
-        String creditCardNumber = payloads.get(0).getCreditCardNumber();
-        Optional<CreditCard> optionalCreditCard = creditCardRepository.findByNumber(creditCardNumber);
-        if (!optionalCreditCard.isPresent()) {
-            return -1;
+    /**
+     * Accepts balance updates into the write-behind buffer, see BalanceWriteBuffer. Updates of
+     * known cards are durably queued and applied with the next flush, unknown cards are reported
+     * as in /credit-card:update-balance. Without the buffer the updates are applied right away.
+     */
+    @PostMapping("/credit-card:update-balance-buffered")
+    public ResponseEntity<BalanceUpdateResult> addNewBalanceEntryBuffered(@RequestBody UpdateBalancePayload[] payloads) {
+        if (!balanceWriteBuffer.isPresent()) {
+            return addNewBalanceEntryBatch(payloads);
         }
-        CreditCard creditCard = optionalCreditCard.get();
-        List<BalanceHistory> balanceHistory = new ArrayList<>();
-        if(creditCard.getBalanceHistoryString() != null){
-            try {
-                List<List<Object>> listOfLists = parseJsonToListOfLists(creditCard.getBalanceHistoryString());
-                for(int obj = 1; obj<listOfLists.size(); obj++){
-                    BalanceHistory bh = new BalanceHistory();
-                    LocalDate dt = LocalDate.parse(listOfLists.get(obj).get(0).toString());
-                    bh.setBalance((double) listOfLists.get(obj).get(1));
-                    bh.setDate(dt);
-                    balanceHistory.add(bh);
-                }
-                if(listOfLists.size() > 0){
-                    BalanceHistory bh = new BalanceHistory();
-                    LocalDate dt = LocalDate.parse(listOfLists.get(0).get(0).toString());
-                    bh.setBalance((double) listOfLists.get(0).get(1));
-                    bh.setDate(dt);
-                    balanceHistory.add(bh);
-                }
-    
-            } catch (Exception e) {
-                e.printStackTrace();
+        List<String> failedCardNumbers = new ArrayList<>();
+        List<UpdateBalancePayload> accepted = new ArrayList<>();
+        for (Map.Entry<String, List<UpdateBalancePayload>> entry : groupByCardNumber(Arrays.asList(payloads)).entrySet()) {
+            if (creditCardLookupCache.get(entry.getKey()).isPresent()) {
+                accepted.addAll(entry.getValue());
+            } else {
+                failedCardNumbers.add(entry.getKey());
             }
         }
+        balanceWriteBuffer.get().submit(accepted);
 
-        try { 
-            int balanceHistorySize = balanceHistory.size();
-            int payloadSize = payloads.size();
-            int i = 0;
-            int j = 0;
-            double diff = 0.0;
-            double prevAmount = 0.0;
-            List<List<Object>> myList = new ArrayList<>();
-
-            
-            List<BalanceHistory> newBalanceHistories = new ArrayList<>();
-            Collections.sort(payloads, Comparator.comparing(UpdateBalancePayload::getBalanceDate));
-
-            
-            while(i<balanceHistorySize && j<payloadSize){
-                LocalDate balanceDate = balanceHistory.get(i).getDate();
-                LocalDate payLoaddate = payloads.get(j).getBalanceDate();
-                if(balanceDate.compareTo(payLoaddate) == 0){
-                    double balanceHistoryAmount =  balanceHistory.get(i).getBalance();
-                    double payLoadBalance = payloads.get(j).getBalanceAmount();
-                    diff = payLoadBalance - balanceHistoryAmount;
-                    prevAmount = payLoadBalance;
-                    i+=1;
-                    j+=1;
-                    List<Object> temp = new ArrayList<>();
-                    temp.add(balanceDate.toString());
-                    temp.add(payLoadBalance);
-                    myList.add(temp);
-
-                    if(diff != 0.00){
-                        BalanceHistory newBalanceHistory = new BalanceHistory();
-                        newBalanceHistory.setBalance(payLoadBalance);
-                        newBalanceHistory.setDate(balanceDate);
-                        newBalanceHistory.setCreditCard(creditCard);
-                        newBalanceHistories.add(newBalanceHistory);
-                        balanceHistoryRepository.save(newBalanceHistory);
-                        creditCard.getBalanceHistory().add(newBalanceHistory);
-                    }
-                    
-                } else if(balanceDate.compareTo(payLoaddate) < 0) {
-                    LocalDate newDate = balanceDate;
-                    while(newDate.compareTo(payLoaddate) < 0 && i<balanceHistorySize){
-                        prevAmount = balanceHistory.get(i).getBalance() + diff;
-                        List<Object> temp = new ArrayList<>();
-                        temp.add(newDate.toString());
-                        temp.add(prevAmount);
-                        myList.add(temp);
-                        if(diff != 0.00){
-                            BalanceHistory newBalanceHistory = new BalanceHistory();
-                            newBalanceHistory.setBalance(prevAmount);
-                            newBalanceHistory.setDate(newDate);
-                            newBalanceHistory.setCreditCard(creditCard);
-                            newBalanceHistories.add(newBalanceHistory);
-
-                            balanceHistoryRepository.save(newBalanceHistory);
-                            creditCard.getBalanceHistory().add(newBalanceHistory);
-                        }                   
-                        newDate = newDate.plusDays(1);
-                        i+=1;
-                    }
-                } else {
-                    LocalDate newDate = payLoaddate;
-                    while(newDate.compareTo(balanceDate) < 0){
-                        prevAmount = payloads.get(j).getBalanceAmount();
-                        List<Object> temp = new ArrayList<>();
-                        temp.add(newDate.toString());
-                        temp.add(prevAmount);
-                        myList.add(temp);
-                        BalanceHistory newBalanceHistory = new BalanceHistory();
-                        newBalanceHistory.setBalance(prevAmount);
-                        newBalanceHistory.setDate(newDate);
-                        newBalanceHistory.setCreditCard(creditCard);
-                        balanceHistoryRepository.save(newBalanceHistory);
-                        creditCard.getBalanceHistory().add(newBalanceHistory);
-                        newBalanceHistories.add(newBalanceHistory);
-                        newDate = newDate.plusDays(1);
-                    }
-                    diff = payloads.get(j).getBalanceAmount() - balanceHistory.get(i).getBalance();
-                    prevAmount = payloads.get(j).getBalanceAmount();
-                    List<Object> temp = new ArrayList<>();
-                    temp.add(newDate.toString());
-                    temp.add(prevAmount);
-                    myList.add(temp);
-                    BalanceHistory newBalanceHistory = new BalanceHistory();
-                    newBalanceHistory.setBalance(prevAmount);
-                    newBalanceHistory.setDate(newDate);
-                    newBalanceHistory.setCreditCard(creditCard);
-                    balanceHistoryRepository.save(newBalanceHistory);
-                    creditCard.getBalanceHistory().add(newBalanceHistory);
-                    newBalanceHistories.add(newBalanceHistory);
-                    newDate = newDate.plusDays(1);
-                    j+=1;   
-                    i+=1;
-                }
-            }
-            while(i<balanceHistorySize){
-                prevAmount = balanceHistory.get(i).getBalance() + diff;
-                List<Object> temp = new ArrayList<>();
-                temp.add(balanceHistory.get(i).getDate().toString());
-                temp.add(prevAmount);
-                myList.add(temp);
-                BalanceHistory newBalanceHistory = new BalanceHistory();
-                newBalanceHistory.setBalance(prevAmount);
-                newBalanceHistory.setDate(balanceHistory.get(i).getDate());
-                newBalanceHistory.setCreditCard(creditCard);
-                balanceHistoryRepository.save(newBalanceHistory);
-                creditCard.getBalanceHistory().add(newBalanceHistory);
-                newBalanceHistories.add(newBalanceHistory);
-                i+=1;
-            }
-            LocalDate startDate;
-            if(i==0){
-                startDate = payloads.get(j).getBalanceDate();
-            } else {
-                startDate = balanceHistory.get(balanceHistorySize - 1).getDate();
-                startDate = startDate.plusDays(1);
+        BalanceUpdateResult result = new BalanceUpdateResult(0, failedCardNumbers);
+        if (!failedCardNumbers.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(result);
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+    }
+
+    /**
+     * Same as /credit-card:update-balance, but the card groups are processed concurrently,
+     * each in its own transaction, and the failures are reported per card.
+     */
+    @PostMapping("/credit-card:update-balance-batch")
+    public ResponseEntity<BalanceUpdateResult> addNewBalanceEntryBatch(@RequestBody UpdateBalancePayload[] payloads) {
+        List<String> failedCardNumbers = new ArrayList<>();
+        int updatedCards = applyConcurrently(groupByCardNumber(Arrays.asList(payloads)), failedCardNumbers);
+
+        BalanceUpdateResult result = new BalanceUpdateResult(updatedCards, failedCardNumbers);
+        if (!failedCardNumbers.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Streaming variant of /credit-card:update-balance-batch for very large uploads. Accepts either a
+     * JSON array or newline-delimited JSON objects, and parses the records one at a time. Every
+     * streamBatchSize records the buffered updates are applied and the request body is not read
+     * further until they are done, so memory use does not depend on the size of the upload.
+     * Records of the same card that fall into different batches are applied batch by batch.
+     */
+    @PostMapping(value = "/credit-card:update-balance-stream", consumes = {"application/x-ndjson", "application/json"})
+    public ResponseEntity<BalanceUpdateResult> addNewBalanceEntryStream(InputStream body) {
+        List<String> failedCardNumbers = new ArrayList<>();
+        int updatedCards = 0;
+        List<UpdateBalancePayload> buffer = new ArrayList<>(streamBatchSize);
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
             }
-            LocalDate today = LocalDate.now();
-            while(j<payloadSize || startDate.compareTo(today) <= 0){
-                if(j<payloadSize && startDate.compareTo(payloads.get(j).getBalanceDate()) == 0){
-                    List<Object> temp = new ArrayList<>();
-                    temp.add(startDate.toString());
-                    temp.add(payloads.get(j).getBalanceAmount());
-                    myList.add(temp);
-                    BalanceHistory newBalanceHistory = new BalanceHistory();
-                    newBalanceHistory.setBalance(payloads.get(j).getBalanceAmount());
-                    newBalanceHistory.setDate(startDate);
-                    newBalanceHistory.setCreditCard(creditCard);
-                    balanceHistoryRepository.save(newBalanceHistory);
-                    creditCard.getBalanceHistory().add(newBalanceHistory);
-                    newBalanceHistories.add(newBalanceHistory);
-                    prevAmount = payloads.get(j).getBalanceAmount();
-                    j += 1;
-                    startDate = startDate.plusDays(1);
-                } else {
-                    if(j<payloadSize){
-                        while(startDate.compareTo(payloads.get(j).getBalanceDate()) < 0){
-                            List<Object> temp = new ArrayList<>();
-                            temp.add(startDate.toString());
-                            temp.add(prevAmount);
-                            myList.add(temp);
-                            
-                            BalanceHistory newBalanceHistory = new BalanceHistory();
-                            newBalanceHistory.setBalance(prevAmount);
-                            newBalanceHistory.setDate(startDate);
-                            newBalanceHistory.setCreditCard(creditCard);
-                            balanceHistoryRepository.save(newBalanceHistory);  
-                            creditCard.getBalanceHistory().add(newBalanceHistory); 
-                            newBalanceHistories.add(newBalanceHistory);
-             
-                            startDate = startDate.plusDays(1);
-                        }
-                    } else {
-                        while(startDate.compareTo(today) <= 0){
-                            List<Object> temp = new ArrayList<>();
-                            temp.add(startDate.toString());
-                            temp.add(prevAmount);
-                            myList.add(temp);
-                            BalanceHistory newBalanceHistory = new BalanceHistory();
-                            newBalanceHistory.setBalance(prevAmount);
-                            newBalanceHistory.setDate(startDate);
-                            newBalanceHistory.setCreditCard(creditCard);
-                            balanceHistoryRepository.save(newBalanceHistory);  
-                            creditCard.getBalanceHistory().add(newBalanceHistory);   
-                            newBalanceHistories.add(newBalanceHistory);
-                            startDate = startDate.plusDays(1);
-                        }
-                    }
+            while (token != null && token != JsonToken.END_ARRAY) {
+                buffer.add(objectMapper.readValue(parser, UpdateBalancePayload.class));
+                if (buffer.size() >= streamBatchSize) {
+                    updatedCards += applyConcurrently(groupByCardNumber(buffer), failedCardNumbers);
+                    buffer.clear();
                 }
+                token = parser.nextToken();
             }
-            ObjectMapper objectMapper = new ObjectMapper();
-            String json = "";
-            myList.add(0, myList.remove(myList.size()-1));
+            updatedCards += applyConcurrently(groupByCardNumber(buffer), failedCardNumbers);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new BalanceUpdateResult(updatedCards, failedCardNumbers));
+        }
+
+        BalanceUpdateResult result = new BalanceUpdateResult(updatedCards, failedCardNumbers);
+        if (!failedCardNumbers.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Runs every card group on the balance update executor and waits for all of them. Returns the
+     * number of cards updated and adds the card numbers that failed to failedCardNumbers.
+     */
+    private int applyConcurrently(Map<String, List<UpdateBalancePayload>> groupedPayload, List<String> failedCardNumbers) {
+        Map<String, Future<Integer>> pendingUpdates = new LinkedHashMap<>();
+        for (Map.Entry<String, List<UpdateBalancePayload>> entry : groupedPayload.entrySet()) {
+            String creditCardNumber = entry.getKey();
+            List<UpdateBalancePayload> cardPayloads = entry.getValue();
+            pendingUpdates.put(creditCardNumber, balanceUpdateExecutor.submit(() -> balanceUpdateCoordinator.apply(creditCardNumber, cardPayloads)));
+        }
+
+        int updatedCards = 0;
+        for (Map.Entry<String, Future<Integer>> entry : pendingUpdates.entrySet()) {
             try {
-                json = objectMapper.writeValueAsString(myList);
-                creditCard.setBalanceHistoryString(json);
-            } catch (JsonProcessingException e) {
-                e.printStackTrace();
+                if (entry.getValue().get() == -1) {
+                    failedCardNumbers.add(entry.getKey());
+                } else {
+                    updatedCards += 1;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedCardNumbers.add(entry.getKey());
+            } catch (ExecutionException e) {
+                failedCardNumbers.add(entry.getKey());
             }
-            creditCardRepository.save(creditCard);
-            return 1;
-        } catch (Exception e) {
-            return -1;
         }
+
+        return updatedCards;
     }
 
-    
+    private static int pageSize(Integer size) {
+        return size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Groups the payloads by card. A later payload for the same card and date replaces the
+     * earlier one, which is the balance the day would end up with anyway.
+     */
+    private Map<String, List<UpdateBalancePayload>> groupByCardNumber(List<UpdateBalancePayload> payloads) {
+        Map<String, Map<LocalDate, UpdateBalancePayload>> latestByDate = new HashMap<>();
+        for (UpdateBalancePayload updatePayload : payloads) {
+            latestByDate.computeIfAbsent(updatePayload.getCreditCardNumber(), k -> new LinkedHashMap<>())
+                    .put(updatePayload.getBalanceDate(), updatePayload);
+        }
+        Map<String, List<UpdateBalancePayload>> groupedPayload = new HashMap<>();
+        for (Map.Entry<String, Map<LocalDate, UpdateBalancePayload>> entry : latestByDate.entrySet()) {
+            groupedPayload.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        return groupedPayload;
+    }
 }
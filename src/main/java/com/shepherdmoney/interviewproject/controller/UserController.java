@@ -1,28 +1,48 @@
 package com.shepherdmoney.interviewproject.controller;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.shepherdmoney.interviewproject.model.BalanceRollupPeriod;
 import com.shepherdmoney.interviewproject.model.User;
 import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.service.BalanceRollupService;
+import com.shepherdmoney.interviewproject.service.UserDeletionService;
+import com.shepherdmoney.interviewproject.service.UserPortfolioService;
 import com.shepherdmoney.interviewproject.vo.request.CreateUserPayload;
+import com.shepherdmoney.interviewproject.vo.response.BalanceRollupView;
+import com.shepherdmoney.interviewproject.vo.response.BalanceView;
+import com.shepherdmoney.interviewproject.vo.response.UserDeletionProgress;
 
 @RestController
 public class UserController {
 
     private final UserRepository userRepository;
+    private final UserDeletionService userDeletionService;
+    private final BalanceRollupService balanceRollupService;
+    private final UserPortfolioService userPortfolioService;
 
     @Autowired
-    public UserController(UserRepository userRepository) {
+    public UserController(UserRepository userRepository, UserDeletionService userDeletionService, BalanceRollupService balanceRollupService,
+                          UserPortfolioService userPortfolioService) {
         this.userRepository = userRepository;
+        this.userDeletionService = userDeletionService;
+        this.balanceRollupService = balanceRollupService;
+        this.userPortfolioService = userPortfolioService;
     }
 
     @PutMapping("/user")
@@ -41,9 +61,9 @@ public class UserController {
     @DeleteMapping("/user")
     public ResponseEntity<String> deleteUser(@RequestParam int userId) {
         try {
-            if (userRepository.existsById(userId)) {
-                userRepository.deleteById(userId);
-                return ResponseEntity.ok("User deleted successfully");
+            // The user disappears right away, its cards and balance history are removed in the background
+            if (userDeletionService.deleteUser(userId)) {
+                return ResponseEntity.accepted().body("User deletion scheduled");
             } else {
                 return ResponseEntity.badRequest().body("User with ID " + userId + " does not exist");
             }
@@ -51,4 +71,50 @@ public class UserController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("An unexpected error occurred "+e);
         }
     }
+
+    /**
+     * Summed daily balance over all cards of the user between from and to (inclusive).
+     */
+    @GetMapping("/user:portfolio-balance")
+    public ResponseEntity<List<BalanceView>> getPortfolioBalance(@RequestParam int userId,
+                                                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            Optional<User> user = userRepository.findById(userId);
+            if (user.isPresent() && !user.get().isDeleted()) {
+                return ResponseEntity.ok(userPortfolioService.dailyBalancesOf(userId, from, to));
+            } else {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
+    /**
+     * Weekly or monthly balance statistics over all cards of the user, see
+     * BalanceRollupService#userRollupsOf.
+     */
+    @GetMapping("/user:balance-rollups")
+    public ResponseEntity<List<BalanceRollupView>> getBalanceRollups(@RequestParam int userId,
+                                                                     @RequestParam BalanceRollupPeriod period,
+                                                                     @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                     @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            // An unknown user simply has no cards
+            return ResponseEntity.ok(balanceRollupService.userRollupsOf(userId, period, from, to));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
+    @GetMapping("/user:deletion-status")
+    public ResponseEntity<UserDeletionProgress> getDeletionStatus(@RequestParam int userId) {
+        Optional<UserDeletionProgress> progress = userDeletionService.progressOf(userId);
+        if (progress.isPresent()) {
+            return ResponseEntity.ok(progress.get());
+        } else {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
 }
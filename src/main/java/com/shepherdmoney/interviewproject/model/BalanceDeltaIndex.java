@@ -0,0 +1,83 @@
+package com.shepherdmoney.interviewproject.model;
+
+import java.time.LocalDate;
+
+/**
+ * Fenwick tree over day offsets holding the balance change of each day. The balance on a
+ * day is the prefix sum of all changes up to and including that day, so both changing a
+ * day (which implicitly shifts every later day) and reading a day are O(log n).
+ *
+ * The tree covers a contiguous range of days starting at originDay and grows in both
+ * directions by doubling, so repeatedly adding days before the start or after the end is
+ * amortized O(log n) as well.
+ *
+ * The index lives only for the duration of an update. It is built from all change points of the
+ * card when its timeline is loaded, so an update still reads the card's n change points and
+ * spends O(n log n) building the timeline. What the index saves is rewriting every later day:
+ * each payload costs O(log n) and at most a couple of rows.
+ */
+public class BalanceDeltaIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long originDay;
+
+    // Raw change per day offset, kept to rebuild the tree when it grows
+    private double[] deltas = new double[0];
+
+    // 1-based Fenwick tree over deltas
+    private double[] tree = new double[1];
+
+    public void add(LocalDate date, double delta) {
+        ensureCapacity(date.toEpochDay());
+        int offset = (int) (date.toEpochDay() - originDay);
+        deltas[offset] += delta;
+        for (int i = offset + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Sum of the changes of all days up to and including the given date.
+     */
+    public double prefixSum(LocalDate date) {
+        long offset = date.toEpochDay() - originDay;
+        if (deltas.length == 0 || offset < 0) {
+            return 0.0;
+        }
+        double sum = 0.0;
+        for (int i = (int) Math.min(offset + 1, deltas.length); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private void ensureCapacity(long day) {
+        if (deltas.length == 0) {
+            originDay = day;
+            resize(day, INITIAL_CAPACITY);
+        } else if (day < originDay) {
+            long newOrigin = Math.min(day, originDay - deltas.length);
+            resize(newOrigin, (int) (originDay - newOrigin) + deltas.length);
+        } else if (day - originDay >= deltas.length) {
+            resize(originDay, (int) Math.max(2L * deltas.length, day - originDay + 1));
+        }
+    }
+
+    private void resize(long newOrigin, int newCapacity) {
+        double[] newDeltas = new double[newCapacity];
+        System.arraycopy(deltas, 0, newDeltas, (int) (originDay - newOrigin), deltas.length);
+        deltas = newDeltas;
+        originDay = newOrigin;
+
+        // Linear-time Fenwick construction
+        tree = new double[newCapacity + 1];
+        for (int i = 1; i <= newCapacity; i++) {
+            tree[i] += deltas[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= newCapacity) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
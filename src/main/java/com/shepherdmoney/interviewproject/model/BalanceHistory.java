@@ -7,8 +7,11 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
@@ -19,15 +22,20 @@ import lombok.ToString;
 @Setter
 @ToString
 @RequiredArgsConstructor
+@Table(indexes = @Index(name = "idx_balance_history_card_date", columnList = "credit_card_id, date"))
 public class BalanceHistory {
 
+    // Sequence ids with a pooled allocation let Hibernate batch the inserts of generated days
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "balance_history_seq")
+    @SequenceGenerator(name = "balance_history_seq", sequenceName = "balance_history_seq", allocationSize = 50)
     private int id;
     
     private LocalDate date;
 
-    private double balance;
+    // Change of the balance on this date compared to the previous day. The balance itself is the
+    // running sum of the changes, see BalanceTimeline#balanceOn.
+    private double delta;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "credit_card_id")
@@ -0,0 +1,90 @@
+package com.shepherdmoney.interviewproject.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Converts balance histories into {@link BalanceHistorySnapshot}s.
+ *
+ * Decoding reads the original balanceHistoryString format, a list of [date, balance] pairs
+ * with today's entry first, with the streaming parser of a shared mapper straight into
+ * primitive arrays and converts it to change points.
+ */
+public final class BalanceHistoryCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private BalanceHistoryCodec() {
+    }
+
+    public static BalanceHistorySnapshot snapshotOf(BalanceTimeline timeline) {
+        Collection<BalanceHistory> entries = timeline.values();
+        int[] epochDays = new int[entries.size()];
+        double[] deltas = new double[entries.size()];
+        int i = 0;
+        for (BalanceHistory entry : entries) {
+            epochDays[i] = (int) entry.getDate().toEpochDay();
+            deltas[i] = entry.getDelta();
+            i++;
+        }
+        return new BalanceHistorySnapshot(epochDays, deltas);
+    }
+
+    public static BalanceHistorySnapshot decode(String json) throws IOException {
+        int[] epochDays = new int[16];
+        double[] balances = new double[16];
+        int size = 0;
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Balance history must be a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_ARRAY) {
+                parser.nextToken();
+                int epochDay = (int) LocalDate.parse(parser.getText()).toEpochDay();
+                parser.nextToken();
+                double balance = parser.getDoubleValue();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    parser.skipChildren();
+                }
+                if (size == epochDays.length) {
+                    epochDays = Arrays.copyOf(epochDays, size * 2);
+                    balances = Arrays.copyOf(balances, size * 2);
+                }
+                epochDays[size] = epochDay;
+                balances[size] = balance;
+                size++;
+            }
+        }
+
+        // Today's entry was stored first, move it back to the end
+        if (size > 1 && epochDays[0] > epochDays[1]) {
+            int today = epochDays[0];
+            double todayBalance = balances[0];
+            System.arraycopy(epochDays, 1, epochDays, 0, size - 1);
+            System.arraycopy(balances, 1, balances, 0, size - 1);
+            epochDays[size - 1] = today;
+            balances[size - 1] = todayBalance;
+        }
+
+        // Keep the first day and the days where the balance changed
+        int[] changeDays = new int[size];
+        double[] deltas = new double[size];
+        int changes = 0;
+        double previousBalance = 0.0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || balances[i] != previousBalance) {
+                changeDays[changes] = epochDays[i];
+                deltas[changes] = balances[i] - previousBalance;
+                changes++;
+            }
+            previousBalance = balances[i];
+        }
+        return new BalanceHistorySnapshot(Arrays.copyOf(changeDays, changes), Arrays.copyOf(deltas, changes));
+    }
+}
@@ -0,0 +1,23 @@
+package com.shepherdmoney.interviewproject.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compact, typed form of a balance history: the change points of a card as parallel arrays of
+ * epoch days and balance changes, in chronological order.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceHistorySnapshot {
+
+    private int[] epochDays;
+
+    private double[] deltas;
+
+    public int size() {
+        return epochDays.length;
+    }
+}
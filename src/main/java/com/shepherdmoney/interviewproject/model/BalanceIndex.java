@@ -0,0 +1,118 @@
+package com.shepherdmoney.interviewproject.model;
+
+import com.shepherdmoney.interviewproject.vo.response.BalanceView;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * Immutable, read-optimized balance history of a single card.
+ *
+ * Holds the change points of the card as sorted epoch days with the balance in effect from
+ * each of them, so point lookups are a binary search and ranges are read straight from the
+ * shared arrays without copying. As with the stored history, the balance of the last change
+ * carries forward up to today.
+ */
+public class BalanceIndex {
+
+    /**
+     * Receives one day of a range. Declared with IOException so that ranges can be written
+     * straight to a response stream.
+     */
+    @FunctionalInterface
+    public interface DayBalanceConsumer {
+        void accept(long epochDay, double balance) throws IOException;
+    }
+
+    private final int[] epochDays;
+
+    private final double[] balances;
+
+    /**
+     * Builds the index from change points in chronological order.
+     */
+    public BalanceIndex(int[] epochDays, double[] deltas) {
+        this.epochDays = epochDays;
+        this.balances = new double[deltas.length];
+        double balance = 0.0;
+        for (int i = 0; i < deltas.length; i++) {
+            balance += deltas[i];
+            balances[i] = balance;
+        }
+    }
+
+    public boolean isEmpty() {
+        return epochDays.length == 0;
+    }
+
+    /**
+     * Number of change points.
+     */
+    public int size() {
+        return epochDays.length;
+    }
+
+    public int epochDayAt(int i) {
+        return epochDays[i];
+    }
+
+    /**
+     * Balance in effect from the i-th change point on.
+     */
+    public double balanceAt(int i) {
+        return balances[i];
+    }
+
+    /**
+     * Balance on the given date, empty if the date is before the start of the history.
+     */
+    public OptionalDouble balanceOn(LocalDate date) {
+        int i = floorIndex(date.toEpochDay());
+        return i < 0 ? OptionalDouble.empty() : OptionalDouble.of(balances[i]);
+    }
+
+    /**
+     * Balance on the given date, or on the first day of the history if the date is before it.
+     * Empty if the date is after both today and the last change.
+     */
+    public Optional<BalanceView> closestOnOrAfter(LocalDate date, LocalDate today) {
+        if (isEmpty() || date.toEpochDay() > lastDay(today)) {
+            return Optional.empty();
+        }
+        if (date.toEpochDay() < epochDays[0]) {
+            return Optional.of(new BalanceView(LocalDate.ofEpochDay(epochDays[0]), balances[0]));
+        }
+        return Optional.of(new BalanceView(date, balances[floorIndex(date.toEpochDay())]));
+    }
+
+    /**
+     * Calls the consumer for every day between from and to (inclusive) that lies within the
+     * history, in chronological order.
+     */
+    public void forEachDay(LocalDate from, LocalDate to, LocalDate today, DayBalanceConsumer consumer) throws IOException {
+        if (isEmpty()) {
+            return;
+        }
+        long start = Math.max(from.toEpochDay(), epochDays[0]);
+        long end = Math.min(to.toEpochDay(), lastDay(today));
+        int i = floorIndex(start);
+        for (long day = start; day <= end; day++) {
+            while (i + 1 < epochDays.length && epochDays[i + 1] <= day) {
+                i++;
+            }
+            consumer.accept(day, balances[i]);
+        }
+    }
+
+    private long lastDay(LocalDate today) {
+        return Math.max(today.toEpochDay(), epochDays[epochDays.length - 1]);
+    }
+
+    private int floorIndex(long epochDay) {
+        int i = Arrays.binarySearch(epochDays, (int) epochDay);
+        return i >= 0 ? i : -i - 2;
+    }
+}
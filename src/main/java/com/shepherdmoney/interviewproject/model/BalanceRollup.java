@@ -0,0 +1,59 @@
+package com.shepherdmoney.interviewproject.model;
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Pre-aggregated balances of one card over one week or month. The balance of the last change
+ * is carried forward to the end of the period, days before the start of the history are not
+ * counted.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Table(indexes = @Index(name = "idx_balance_rollup_card_period", columnList = "credit_card_id, period, periodStart", unique = true))
+public class BalanceRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "balance_rollup_seq")
+    @SequenceGenerator(name = "balance_rollup_seq", sequenceName = "balance_rollup_seq", allocationSize = 50)
+    private int id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "credit_card_id")
+    @ToString.Exclude
+    private CreditCard creditCard;
+
+    @Enumerated(EnumType.STRING)
+    private BalanceRollupPeriod period;
+
+    private LocalDate periodStart;
+
+    // Days of the period that lie within the history
+    private int days;
+
+    private double endBalance;
+
+    // Sum of the daily balances, the average daily balance is balanceSum / days
+    private double balanceSum;
+
+    private double maxBalance;
+}
@@ -0,0 +1,49 @@
+package com.shepherdmoney.interviewproject.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Granularity of a balance rollup. Weeks start on Monday.
+ */
+public enum BalanceRollupPeriod {
+
+    WEEK {
+        @Override
+        public LocalDate startOf(LocalDate date) {
+            return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+
+        @Override
+        public LocalDate next(LocalDate periodStart) {
+            return periodStart.plusWeeks(1);
+        }
+    },
+
+    MONTH {
+        @Override
+        public LocalDate startOf(LocalDate date) {
+            return date.withDayOfMonth(1);
+        }
+
+        @Override
+        public LocalDate next(LocalDate periodStart) {
+            return periodStart.plusMonths(1);
+        }
+    };
+
+    /**
+     * First day of the period containing the given date.
+     */
+    public abstract LocalDate startOf(LocalDate date);
+
+    /**
+     * First day of the period following the one starting on periodStart.
+     */
+    public abstract LocalDate next(LocalDate periodStart);
+
+    public LocalDate endOf(LocalDate periodStart) {
+        return next(periodStart).minusDays(1);
+    }
+}
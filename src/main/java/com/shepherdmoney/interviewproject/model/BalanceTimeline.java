@@ -0,0 +1,104 @@
+package com.shepherdmoney.interviewproject.model;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Sorted, date-indexed view over the balance history rows of a single credit card.
+ *
+ * Backed by a TreeMap keyed by date, so retrieval of a single day, retrieval of the
+ * closest date on or after a given day, insertion and deletion are all O(log n), and
+ * traversal of the whole history in chronological order is linear.
+ *
+ * Rows store the change of the balance on their date. Balances are prefix sums of those
+ * changes, served by a {@link BalanceDeltaIndex}.
+ */
+public class BalanceTimeline {
+
+    private final NavigableMap<LocalDate, BalanceHistory> entries = new TreeMap<>();
+
+    private final BalanceDeltaIndex deltaIndex = new BalanceDeltaIndex();
+
+    /**
+     * Builds a timeline from persisted rows. Older data may contain several rows for the
+     * same date, in which case the most recently inserted one (highest id) wins.
+     */
+    public static BalanceTimeline of(Collection<BalanceHistory> rows) {
+        BalanceTimeline timeline = new BalanceTimeline();
+        rows.stream()
+                .sorted(Comparator.comparingInt(BalanceHistory::getId))
+                .forEach(timeline::put);
+        return timeline;
+    }
+
+    public Optional<BalanceHistory> get(LocalDate date) {
+        return Optional.ofNullable(entries.get(date));
+    }
+
+    /**
+     * Returns the entry for the given date, or the closest entry after it if there is a gap.
+     */
+    public Optional<BalanceHistory> closestOnOrAfter(LocalDate date) {
+        return Optional.ofNullable(entries.ceilingEntry(date)).map(Map.Entry::getValue);
+    }
+
+    public BalanceHistory put(BalanceHistory entry) {
+        BalanceHistory previous = entries.put(entry.getDate(), entry);
+        if (previous != null) {
+            deltaIndex.add(previous.getDate(), -previous.getDelta());
+        }
+        deltaIndex.add(entry.getDate(), entry.getDelta());
+        return previous;
+    }
+
+    public BalanceHistory remove(LocalDate date) {
+        BalanceHistory removed = entries.remove(date);
+        if (removed != null) {
+            deltaIndex.add(date, -removed.getDelta());
+        }
+        return removed;
+    }
+
+    /**
+     * Changes the balance of the entry's date by diff, which shifts every later day as well.
+     */
+    public void addDelta(BalanceHistory entry, double diff) {
+        entry.setDelta(entry.getDelta() + diff);
+        deltaIndex.add(entry.getDate(), diff);
+    }
+
+    /**
+     * Balance at the end of the given date. Days before the first entry have a balance of 0.
+     */
+    public double balanceOn(LocalDate date) {
+        return deltaIndex.prefixSum(date);
+    }
+
+    public BalanceHistory first() {
+        return entries.firstEntry().getValue();
+    }
+
+    public BalanceHistory last() {
+        return entries.lastEntry().getValue();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * All entries in chronological order.
+     */
+    public Collection<BalanceHistory> values() {
+        return entries.values();
+    }
+}
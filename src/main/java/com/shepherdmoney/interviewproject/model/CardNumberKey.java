@@ -0,0 +1,33 @@
+package com.shepherdmoney.interviewproject.model;
+
+/**
+ * Packs a card number into a long so that it can be indexed and compared as a number.
+ *
+ * The digits are prefixed with a 1 before parsing, which keeps leading zeros and the length
+ * significant. Numbers of up to 18 digits fit, which covers the usual 12 to 16 digit PANs.
+ */
+public final class CardNumberKey {
+
+    private static final int MAX_DIGITS = 18;
+
+    private CardNumberKey() {
+    }
+
+    /**
+     * Returns the packed key, or null if the number is not made of 1 to 18 digits.
+     */
+    public static Long encode(String number) {
+        if (number == null || number.isEmpty() || number.length() > MAX_DIGITS) {
+            return null;
+        }
+        long key = 1;
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+}
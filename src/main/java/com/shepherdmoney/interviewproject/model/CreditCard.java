@@ -8,33 +8,57 @@
 import java.util.ArrayList;
 import java.util.List;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
     import jakarta.persistence.FetchType;
     import jakarta.persistence.GeneratedValue;
     import jakarta.persistence.GenerationType;
     import jakarta.persistence.Id;
+    import jakarta.persistence.Index;
     import jakarta.persistence.JoinColumn;
     import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
     @Entity
     @Getter
     @Setter
     // @ToString
     @RequiredArgsConstructor
+    @Table(uniqueConstraints = @UniqueConstraint(name = "uk_credit_card_number", columnNames = "number"),
+           indexes = {@Index(name = "idx_credit_card_number_key", columnList = "number_key", unique = true),
+                      @Index(name = "idx_credit_card_owner_id", columnList = "userId, id")})
+    @Cacheable
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     public class CreditCard {
 
+        // Pooled sequence ids keep bulk card inserts batchable
         @Id
-        @GeneratedValue(strategy = GenerationType.AUTO)
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "credit_card_seq")
+        @SequenceGenerator(name = "credit_card_seq", sequenceName = "credit_card_seq", allocationSize = 50)
         private int id;
 
         private String issuanceBank;
 
         private String number;
 
+        // Packed form of the card number (see CardNumberKey), null if the number cannot be packed
+        @Column(name = "number_key")
+        private Long numberKey;
+
         private String balanceHistoryString;
 
+        @Version
+        private long version;
+
         @ManyToOne(fetch = FetchType.LAZY)
         @JoinColumn(name = "userId")
         private User owner;
@@ -42,6 +66,36 @@ import jakarta.persistence.OneToMany;
         @OneToMany(mappedBy = "creditCard", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
         private List<BalanceHistory> balanceHistory = new ArrayList<>();
 
+        public void setNumber(String number) {
+            this.number = number;
+            this.numberKey = CardNumberKey.encode(number);
+        }
+
+        // Sorted index over balanceHistory, built lazily from the persisted rows.
+        @Transient
+        private BalanceTimeline balanceTimeline;
+
+        public BalanceTimeline getBalanceTimeline() {
+            if (balanceTimeline == null) {
+                balanceTimeline = BalanceTimeline.of(balanceHistory);
+            }
+            return balanceTimeline;
+        }
+
+        /**
+         * Attaches a new balance entry to this card, keeping the row list and the timeline in sync.
+         */
+        public void addBalanceHistory(BalanceHistory entry) {
+            entry.setCreditCard(this);
+            balanceHistory.add(entry);
+            getBalanceTimeline().put(entry);
+        }
+
+        public void removeBalanceHistory(BalanceHistory entry) {
+            getBalanceTimeline().remove(entry.getDate());
+            balanceHistory.remove(entry);
+        }
+
         // TODO: Credit card's balance history. It is a requirement that the dates in the balanceHistory 
         //       list must be in chronological order, with the most recent date appearing first in the list. 
         //       Additionally, the last object in the "list" must have a date value that matches today's date, 
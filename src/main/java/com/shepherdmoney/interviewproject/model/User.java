@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
@@ -14,6 +16,9 @@ import lombok.ToString;
 @Setter
 @RequiredArgsConstructor
 @Table(name = "MyUser")
+// Second-level cached, users and their card lists are read far more often than they change
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class User {
 
     @Id
@@ -24,6 +29,10 @@ public class User {
 
     private String email;
 
+    // Set as soon as the user is deleted, the user and its data are then removed in the background
+    private boolean deleted;
+
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @OneToMany(mappedBy = "owner", cascade = CascadeType.REMOVE, fetch = FetchType.LAZY, orphanRemoval = true)
     private List<CreditCard> creditCards = new ArrayList<>();
 
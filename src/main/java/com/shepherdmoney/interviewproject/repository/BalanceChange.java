@@ -0,0 +1,16 @@
+package com.shepherdmoney.interviewproject.repository;
+
+import java.time.LocalDate;
+
+import lombok.Value;
+
+/**
+ * Date and balance change of a stored balance history row, without loading the entity.
+ */
+@Value
+public class BalanceChange {
+
+    LocalDate date;
+
+    double delta;
+}
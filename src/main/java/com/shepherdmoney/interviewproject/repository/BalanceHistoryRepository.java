@@ -2,8 +2,15 @@ package com.shepherdmoney.interviewproject.repository;
 
 import com.shepherdmoney.interviewproject.model.BalanceHistory;
 
-import org.hibernate.mapping.List;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -11,5 +18,21 @@ import org.springframework.stereotype.Repository;
  */
 @Repository("BalanceHistoryRepo")
 public interface BalanceHistoryRepository extends JpaRepository<BalanceHistory, Integer> {
-    
-}
\ No newline at end of file
+
+    @Query("select new com.shepherdmoney.interviewproject.repository.BalanceChange(b.date, b.delta) from BalanceHistory b where b.creditCard.id = :creditCardId order by b.date")
+    List<BalanceChange> findChangesByCreditCardId(@Param("creditCardId") int creditCardId);
+
+    // Keyset variants, the first page and the page starting right after the given date
+    @Query("select new com.shepherdmoney.interviewproject.repository.BalanceChange(b.date, b.delta) from BalanceHistory b where b.creditCard.id = :creditCardId order by b.date")
+    List<BalanceChange> findChangesByCreditCardId(@Param("creditCardId") int creditCardId, Pageable pageable);
+
+    @Query("select new com.shepherdmoney.interviewproject.repository.BalanceChange(b.date, b.delta) from BalanceHistory b where b.creditCard.id = :creditCardId and b.date > :after order by b.date")
+    List<BalanceChange> findChangesByCreditCardIdAfter(@Param("creditCardId") int creditCardId, @Param("after") LocalDate after, Pageable pageable);
+
+    @Query("select b.id from BalanceHistory b where b.creditCard.id in :creditCardIds")
+    List<Integer> findIdsByCreditCardIds(@Param("creditCardIds") Collection<Integer> creditCardIds, Pageable pageable);
+
+    @Modifying
+    @Query("delete from BalanceHistory b where b.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
+}
@@ -0,0 +1,39 @@
+package com.shepherdmoney.interviewproject.repository;
+
+import com.shepherdmoney.interviewproject.model.BalanceRollup;
+import com.shepherdmoney.interviewproject.model.BalanceRollupPeriod;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Crud Repository to store Balance Rollup classes
+ */
+@Repository("BalanceRollupRepo")
+public interface BalanceRollupRepository extends JpaRepository<BalanceRollup, Integer> {
+
+    @Query("select r from BalanceRollup r where r.creditCard.id = :creditCardId and r.period = :period " +
+           "and r.periodStart between :from and :to order by r.periodStart")
+    List<BalanceRollup> findInRange(@Param("creditCardId") int creditCardId, @Param("period") BalanceRollupPeriod period,
+                                    @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    Optional<BalanceRollup> findFirstByCreditCardIdAndPeriodOrderByPeriodStartDesc(int creditCardId, BalanceRollupPeriod period);
+
+    boolean existsByCreditCardIdAndPeriod(int creditCardId, BalanceRollupPeriod period);
+
+    @Modifying
+    @Query("delete from BalanceRollup r where r.creditCard.id = :creditCardId and r.period = :period and r.periodStart >= :from")
+    int deleteFrom(@Param("creditCardId") int creditCardId, @Param("period") BalanceRollupPeriod period, @Param("from") LocalDate from);
+
+    @Modifying
+    @Query("delete from BalanceRollup r where r.creditCard.id in :creditCardIds")
+    int deleteByCreditCardIds(@Param("creditCardIds") Collection<Integer> creditCardIds);
+}
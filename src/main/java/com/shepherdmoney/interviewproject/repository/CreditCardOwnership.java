@@ -0,0 +1,14 @@
+package com.shepherdmoney.interviewproject.repository;
+
+import lombok.Value;
+
+/**
+ * Id of a credit card and of the user owning it, without loading either entity.
+ */
+@Value
+public class CreditCardOwnership {
+
+    int cardId;
+
+    int ownerId;
+}
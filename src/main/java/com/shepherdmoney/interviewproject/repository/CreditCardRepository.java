@@ -1,11 +1,20 @@
 package com.shepherdmoney.interviewproject.repository;
 
 import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.vo.response.CreditCardView;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import jakarta.persistence.LockModeType;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -15,4 +24,39 @@ import org.springframework.stereotype.Repository;
 public interface CreditCardRepository extends JpaRepository<CreditCard, Integer> {
     Optional<CreditCard> findByNumber(String number);
 
+    // Cards of deleted users are not updated any more, see UserDeletionService
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    @Query("select c from CreditCard c where c.id = :id and c.owner.deleted = false")
+    Optional<CreditCard> findByIdForUpdate(@Param("id") int id);
+
+    @Query("select new com.shepherdmoney.interviewproject.repository.CreditCardOwnership(c.id, c.owner.id) from CreditCard c where c.number = :number and c.owner.deleted = false")
+    Optional<CreditCardOwnership> findOwnershipByNumber(@Param("number") String number);
+
+    @Query("select new com.shepherdmoney.interviewproject.repository.CreditCardOwnership(c.id, c.owner.id) from CreditCard c where c.numberKey = :numberKey and c.owner.deleted = false")
+    Optional<CreditCardOwnership> findOwnershipByNumberKey(@Param("numberKey") long numberKey);
+
+    @Query("select new com.shepherdmoney.interviewproject.vo.response.CreditCardView(c.id, c.issuanceBank, c.number) from CreditCard c where c.owner.id = :ownerId and c.owner.deleted = false order by c.id")
+    List<CreditCardView> findViewsByOwnerId(@Param("ownerId") int ownerId, Pageable pageable);
+
+    // Keyset variant, the page starts right after the card with id afterId
+    @Query("select new com.shepherdmoney.interviewproject.vo.response.CreditCardView(c.id, c.issuanceBank, c.number) from CreditCard c where c.owner.id = :ownerId and c.owner.deleted = false and c.id > :afterId order by c.id")
+    List<CreditCardView> findViewsByOwnerIdAfter(@Param("ownerId") int ownerId, @Param("afterId") int afterId, Pageable pageable);
+
+    @Query("select c.number from CreditCard c where c.number in :numbers")
+    List<String> findExistingNumbers(@Param("numbers") Collection<String> numbers);
+
+    @Query("select c.number from CreditCard c where c.owner.id = :ownerId")
+    List<String> findNumbersByOwnerId(@Param("ownerId") int ownerId);
+
+    @Query("select c.id from CreditCard c where c.owner.id = :ownerId")
+    List<Integer> findIdsByOwnerId(@Param("ownerId") int ownerId, Pageable pageable);
+
+    // Makes updates that loaded one of the cards before this fail on their version check
+    @Modifying
+    @Query("update CreditCard c set c.version = c.version + 1 where c.owner.id = :ownerId")
+    int incrementVersionsByOwnerId(@Param("ownerId") int ownerId);
+
+    @Modifying
+    @Query("delete from CreditCard c where c.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
 }
@@ -1,8 +1,14 @@
 package com.shepherdmoney.interviewproject.repository;
 
 import com.shepherdmoney.interviewproject.model.User;
+
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -10,4 +16,15 @@ import org.springframework.stereotype.Repository;
  */
 @Repository("UserRepo")
 public interface UserRepository extends JpaRepository<User, Integer> {
+
+    @Modifying
+    @Query("update User u set u.deleted = true where u.id = :userId and u.deleted = false")
+    int markDeleted(@Param("userId") int userId);
+
+    @Query("select u.id from User u where u.deleted = true")
+    List<Integer> findDeletedIds();
+
+    @Modifying
+    @Query("delete from User u where u.id = :userId and u.deleted = true")
+    int deleteTombstoned(@Param("userId") int userId);
 }
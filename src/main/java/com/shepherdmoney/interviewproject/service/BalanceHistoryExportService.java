@@ -0,0 +1,162 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.shepherdmoney.interviewproject.store.BalanceHistoryStore;
+import com.shepherdmoney.interviewproject.vo.response.BalanceExportResult;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Exports the balance history of all cards into an Arrow IPC file.
+ *
+ * Change points are streamed from the {@link BalanceHistoryStore}, which for the database reads
+ * straight from JDBC with a forward-only result set, and written into one set of column
+ * vectors of batchSize rows, which is reused for every record batch. Memory use therefore does
+ * not depend on the number of rows exported. The file holds the stored
+ * change points ordered by card and date, with the running balance of the card next to each
+ * change.
+ */
+@Service
+public class BalanceHistoryExportService {
+
+    private static final Schema SCHEMA = new Schema(List.of(
+            Field.notNullable("credit_card_id", new ArrowType.Int(32, true)),
+            Field.notNullable("date", new ArrowType.Date(DateUnit.DAY)),
+            Field.notNullable("delta", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            Field.notNullable("balance", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE))));
+
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final BalanceHistoryStore balanceHistoryStore;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+    private final int batchSize;
+
+    @Autowired
+    public BalanceHistoryExportService(BalanceHistoryStore balanceHistoryStore, PlatformTransactionManager transactionManager,
+                                       @Value("${balance-export.directory:data/exports}") String directory,
+                                       @Value("${balance-export.batch-size:65536}") int batchSize) {
+        this.balanceHistoryStore = balanceHistoryStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.directory = Paths.get(directory);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Exports into a new, timestamped file in the export directory.
+     */
+    public BalanceExportResult export() throws IOException {
+        Files.createDirectories(directory);
+        return export(directory.resolve("balance-history-" + LocalDateTime.now().format(FILE_NAME_FORMAT) + ".arrow"));
+    }
+
+    public BalanceExportResult export(Path target) throws IOException {
+        try (BufferAllocator allocator = new RootAllocator();
+             VectorSchemaRoot root = VectorSchemaRoot.create(SCHEMA, allocator);
+             FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING);
+             ArrowFileWriter writer = new ArrowFileWriter(root, null, channel)) {
+            root.getFieldVectors().forEach(vector -> vector.setInitialCapacity(batchSize));
+            root.allocateNew();
+            writer.start();
+
+            BatchWriter batchWriter = new BatchWriter(root, writer);
+            try {
+                transactionTemplate.executeWithoutResult(status -> balanceHistoryStore.forEachChange(batchWriter));
+                batchWriter.writeBatch();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.end();
+            return new BalanceExportResult(target.toAbsolutePath().toString(), batchWriter.rows);
+        }
+    }
+
+    /**
+     * Fills the column vectors row by row and writes them out as a record batch whenever they
+     * are full.
+     */
+    private class BatchWriter implements BalanceHistoryStore.ChangeConsumer {
+
+        private final VectorSchemaRoot root;
+        private final ArrowFileWriter writer;
+        private final IntVector creditCardIds;
+        private final DateDayVector dates;
+        private final Float8Vector deltas;
+        private final Float8Vector balances;
+
+        private int batchRows;
+        private long rows;
+        private int creditCardId = -1;
+        private double balance;
+
+        BatchWriter(VectorSchemaRoot root, ArrowFileWriter writer) {
+            this.root = root;
+            this.writer = writer;
+            this.creditCardIds = (IntVector) root.getVector("credit_card_id");
+            this.dates = (DateDayVector) root.getVector("date");
+            this.deltas = (Float8Vector) root.getVector("delta");
+            this.balances = (Float8Vector) root.getVector("balance");
+        }
+
+        @Override
+        public void accept(int rowCreditCardId, int epochDay, double delta) {
+            if (rowCreditCardId != creditCardId) {
+                creditCardId = rowCreditCardId;
+                balance = 0.0;
+            }
+            balance += delta;
+
+            creditCardIds.set(batchRows, rowCreditCardId);
+            dates.set(batchRows, epochDay);
+            deltas.set(batchRows, delta);
+            balances.set(batchRows, balance);
+            batchRows += 1;
+            if (batchRows == batchSize) {
+                writeBatch();
+            }
+        }
+
+        void writeBatch() {
+            if (batchRows == 0) {
+                return;
+            }
+            root.setRowCount(batchRows);
+            try {
+                writer.writeBatch();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows += batchRows;
+            batchRows = 0;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.shepherdmoney.interviewproject.model.BalanceHistory;
+import com.shepherdmoney.interviewproject.model.BalanceHistoryCodec;
+import com.shepherdmoney.interviewproject.model.BalanceHistorySnapshot;
+import com.shepherdmoney.interviewproject.model.BalanceIndex;
+import com.shepherdmoney.interviewproject.model.BalanceTimeline;
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.repository.CreditCardOwnership;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.store.BalanceHistoryStore;
+import com.shepherdmoney.interviewproject.store.BalanceHistoryWriter;
+import com.shepherdmoney.interviewproject.vo.request.UpdateBalancePayload;
+import com.shepherdmoney.interviewproject.vo.response.BalanceView;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Applies balance updates to a credit card's balance history.
+ *
+ * The history is a day-by-day series from the first known date up to today. Setting the
+ * balance of a day shifts every later day by the same difference, days before the first known
+ * date take the first known balance and days after the last change carry the balance forward.
+ * Each row stores the change of its day rather than the balance, and only days whose balance
+ * actually changed (plus the first day) are stored. The balance of any other day is resolved
+ * from the closest earlier change. Where the changes are persisted is up to the configured
+ * {@link BalanceHistoryStore}. An update loads all change points of the card, applying a
+ * payload then only touches its own day, see BalanceDeltaIndex.
+ *
+ * The days between the last change and today are never written, neither here nor by a
+ * background job: readers carry the last balance forward up to the current date, so an update
+ * after a quiet period only costs the dates it actually submits.
+ */
+@Service
+public class BalanceHistoryService {
+
+    private final CreditCardRepository creditCardRepository;
+    private final BalanceHistoryStore balanceHistoryStore;
+    private final CreditCardLookupCache creditCardLookupCache;
+    private final BalanceQueryService balanceQueryService;
+    private final BalanceRollupService balanceRollupService;
+    private final UserPortfolioService userPortfolioService;
+    private final DistributionSummary rowsWritten;
+    private final DistributionSummary historyLength;
+    private final DistributionSummary legacyHistorySize;
+
+    @Autowired
+    public BalanceHistoryService(CreditCardRepository creditCardRepository, BalanceHistoryStore balanceHistoryStore,
+                                 CreditCardLookupCache creditCardLookupCache, BalanceQueryService balanceQueryService,
+                                 BalanceRollupService balanceRollupService, UserPortfolioService userPortfolioService,
+                                 MeterRegistry meterRegistry) {
+        this.creditCardRepository = creditCardRepository;
+        this.balanceHistoryStore = balanceHistoryStore;
+        this.creditCardLookupCache = creditCardLookupCache;
+        this.balanceQueryService = balanceQueryService;
+        this.balanceRollupService = balanceRollupService;
+        this.userPortfolioService = userPortfolioService;
+        this.rowsWritten = DistributionSummary.builder("balance.update.rows.written")
+                .description("Balance change points inserted per card update")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.historyLength = DistributionSummary.builder("balance.update.history.length")
+                .description("Stored balance changes of a card when it is updated")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.legacyHistorySize = DistributionSummary.builder("balance.update.legacy.json.size")
+                .description("Length of legacy balanceHistoryString values migrated on update")
+                .baseUnit("characters")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the daily balances of a card from the first known date up to today. As with the
+     * original balance history format, the first element is today's balance and the remaining
+     * days follow in chronological order. Returns an empty optional if the card does not exist.
+     */
+    public Optional<List<BalanceView>> getBalanceHistory(String creditCardNumber) {
+        return balanceQueryService.indexOf(creditCardNumber).map(index -> {
+            List<BalanceView> balances = new ArrayList<>();
+            try {
+                index.forEachDay(LocalDate.MIN, LocalDate.MAX, LocalDate.now(),
+                        (epochDay, balance) -> balances.add(new BalanceView(LocalDate.ofEpochDay(epochDay), balance)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!balances.isEmpty()) {
+                balances.add(0, balances.remove(balances.size() - 1));
+            }
+            return balances;
+        });
+    }
+
+    /**
+     * Applies all payloads of a single credit card. Returns 1 on success and -1 if the card
+     * does not exist or the update failed.
+     */
+    @Transactional
+    public int customAddBalanceEntry(List<UpdateBalancePayload> payloads) {
+        String creditCardNumber = payloads.get(0).getCreditCardNumber();
+        Optional<CreditCard> optionalCreditCard = findCard(creditCardNumber);
+        if (!optionalCreditCard.isPresent()) {
+            return -1;
+        }
+        CreditCard creditCard = optionalCreditCard.get();
+        try {
+            BalanceHistoryWriter history = balanceHistoryStore.open(creditCard);
+            boolean migrated = migrateLegacyHistory(creditCard, history);
+            historyLength.record(history.timeline().size());
+
+            List<UpdateBalancePayload> sortedPayloads = new ArrayList<>(payloads);
+            sortedPayloads.sort(Comparator.comparing(UpdateBalancePayload::getBalanceDate));
+            boolean changed = applyPayloads(history, sortedPayloads);
+            if (!migrated && !changed) {
+                // A replay of balances the card already has, nothing to write or refresh
+                return 1;
+            }
+
+            // A migrated history is new as a whole, otherwise nothing before the earliest payload changed
+            BalanceTimeline timeline = history.timeline();
+            LocalDate changedFrom = migrated ? timeline.first().getDate() : sortedPayloads.get(0).getBalanceDate();
+            BalanceHistorySnapshot snapshot = BalanceHistoryCodec.snapshotOf(timeline);
+            balanceRollupService.refresh(creditCard, new BalanceIndex(snapshot.getEpochDays(), snapshot.getDeltas()), changedFrom);
+
+            int written = history.save();
+            creditCardRepository.save(creditCard);
+            rowsWritten.record(written);
+            invalidateAfterCommit(creditCard);
+            return 1;
+        } catch (OptimisticLockingFailureException e) {
+            // Another writer updated the card first, let the caller retry
+            throw e;
+        } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return -1;
+        }
+    }
+
+    /**
+     * Drops the cached read index of the card and the portfolio of its owner once the update is
+     * visible to other transactions, so that a concurrent read cannot cache the old state again.
+     */
+    private void invalidateAfterCommit(CreditCard creditCard) {
+        int creditCardId = creditCard.getId();
+        Integer ownerId = creditCard.getOwner() == null ? null : creditCard.getOwner().getId();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                balanceQueryService.invalidate(creditCardId);
+                if (ownerId != null) {
+                    userPortfolioService.invalidate(ownerId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Resolves the card id through the lookup cache and loads the card by primary key. The
+     * card's version is incremented on commit so that concurrent updates of the same card
+     * conflict even if only its balance history changed.
+     */
+    private Optional<CreditCard> findCard(String creditCardNumber) {
+        Optional<CreditCardOwnership> ownership = creditCardLookupCache.get(creditCardNumber);
+        if (!ownership.isPresent()) {
+            return Optional.empty();
+        }
+        Optional<CreditCard> creditCard = creditCardRepository.findByIdForUpdate(ownership.get().getCardId());
+        if (!creditCard.isPresent()) {
+            creditCardLookupCache.invalidate(creditCardNumber);
+        }
+        return creditCard;
+    }
+
+    /**
+     * Sets the balance of every payload date, in date order. Setting a day is a single change
+     * to that day's delta, the later days follow from the prefix sums without being rewritten.
+     * Days that already have the submitted balance are skipped. Returns whether anything changed.
+     */
+    private boolean applyPayloads(BalanceHistoryWriter history, List<UpdateBalancePayload> sortedPayloads) {
+        BalanceTimeline timeline = history.timeline();
+        boolean changed = false;
+        for (UpdateBalancePayload payload : sortedPayloads) {
+            LocalDate date = payload.getBalanceDate();
+            Optional<BalanceHistory> existing = timeline.get(date);
+            double diff = payload.getBalanceAmount() - timeline.balanceOn(date);
+            // Only a date before the start of the history changes it without changing a balance
+            boolean withinHistory = existing.isPresent() || (!timeline.isEmpty() && !date.isBefore(timeline.first().getDate()));
+            if (diff == 0.00 && withinHistory) {
+                continue;
+            }
+            BalanceHistory entry = existing.orElseGet(() -> addChangePoint(history, date));
+            history.addDelta(entry, payload.getBalanceAmount() - timeline.balanceOn(date));
+            removeIfUnchanged(history, entry);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Creates the row that will hold the change of the given date. A date before the first known
+     * date becomes the new first day and takes over the opening balance.
+     */
+    private BalanceHistory addChangePoint(BalanceHistoryWriter history, LocalDate date) {
+        BalanceTimeline timeline = history.timeline();
+        if (timeline.isEmpty() || !date.isBefore(timeline.first().getDate())) {
+            return history.add(date, 0.0);
+        }
+        BalanceHistory first = timeline.first();
+        double firstBalance = timeline.balanceOn(first.getDate());
+        BalanceHistory newBalanceHistory = history.add(date, firstBalance);
+        history.addDelta(first, -firstBalance);
+        removeIfUnchanged(history, first);
+        return newBalanceHistory;
+    }
+
+    /**
+     * Drops a row whose day no longer changes the balance. The first day is always kept since
+     * it marks the start of the history.
+     */
+    private void removeIfUnchanged(BalanceHistoryWriter history, BalanceHistory entry) {
+        if (entry.getDelta() != 0.00 || entry == history.timeline().first()) {
+            return;
+        }
+        history.remove(entry);
+    }
+
+    /**
+     * Cards written before the timeline existed only have their history in balanceHistoryString.
+     * Those are converted into change points once, after which the string is no longer used.
+     * Returns whether the card was migrated. A string that cannot be decoded fails the update
+     * and is left in place.
+     */
+    private boolean migrateLegacyHistory(CreditCard creditCard, BalanceHistoryWriter history) {
+        if (creditCard.getBalanceHistoryString() == null || !history.timeline().isEmpty()) {
+            return false;
+        }
+        legacyHistorySize.record(creditCard.getBalanceHistoryString().length());
+        try {
+            BalanceHistorySnapshot snapshot = BalanceHistoryCodec.decode(creditCard.getBalanceHistoryString());
+            for (int i = 0; i < snapshot.size(); i++) {
+                history.add(LocalDate.ofEpochDay(snapshot.getEpochDays()[i]), snapshot.getDeltas()[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        creditCard.setBalanceHistoryString(null);
+        return !history.timeline().isEmpty();
+    }
+}
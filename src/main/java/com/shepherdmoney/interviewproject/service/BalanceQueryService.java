@@ -0,0 +1,93 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shepherdmoney.interviewproject.model.BalanceHistoryCodec;
+import com.shepherdmoney.interviewproject.model.BalanceHistorySnapshot;
+import com.shepherdmoney.interviewproject.model.BalanceIndex;
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.repository.BalanceChange;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.store.BalanceHistoryStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Serves balance reads from a per-card {@link BalanceIndex}. Indexes are built from the change
+ * points in the {@link BalanceHistoryStore} on first use and kept in a bounded cache until the card is updated.
+ * Cards that have not been updated since the change points were introduced are read from their
+ * legacy balanceHistoryString, which is migrated with their next update.
+ */
+@Service
+public class BalanceQueryService {
+
+    private final BalanceHistoryStore balanceHistoryStore;
+    private final CreditCardRepository creditCardRepository;
+    private final CreditCardLookupCache creditCardLookupCache;
+    private final Cache<Integer, BalanceIndex> indexes;
+
+    @Autowired
+    public BalanceQueryService(BalanceHistoryStore balanceHistoryStore, CreditCardRepository creditCardRepository,
+                               CreditCardLookupCache creditCardLookupCache, MeterRegistry meterRegistry,
+                               @Value("${balance-query.index-cache.max-size:10000}") long maxSize) {
+        this.balanceHistoryStore = balanceHistoryStore;
+        this.creditCardRepository = creditCardRepository;
+        this.creditCardLookupCache = creditCardLookupCache;
+        this.indexes = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, indexes, "balanceIndex");
+    }
+
+    /**
+     * Index of the given card, empty if the card does not exist.
+     */
+    public Optional<BalanceIndex> indexOf(String creditCardNumber) {
+        return creditCardLookupCache.get(creditCardNumber)
+                .map(ownership -> indexes.get(ownership.getCardId(), this::load));
+    }
+
+    public void invalidate(int creditCardId) {
+        indexes.invalidate(creditCardId);
+    }
+
+    private BalanceIndex load(int creditCardId) {
+        List<BalanceChange> changes = balanceHistoryStore.findChanges(creditCardId);
+        if (changes.isEmpty()) {
+            Optional<BalanceHistorySnapshot> legacy = legacyHistoryOf(creditCardId);
+            if (legacy.isPresent()) {
+                return new BalanceIndex(legacy.get().getEpochDays(), legacy.get().getDeltas());
+            }
+        }
+        int[] epochDays = new int[changes.size()];
+        double[] deltas = new double[changes.size()];
+        for (int i = 0; i < changes.size(); i++) {
+            epochDays[i] = (int) changes.get(i).getDate().toEpochDay();
+            deltas[i] = changes.get(i).getDelta();
+        }
+        return new BalanceIndex(epochDays, deltas);
+    }
+
+    private Optional<BalanceHistorySnapshot> legacyHistoryOf(int creditCardId) {
+        Optional<String> legacyHistory = creditCardRepository.findById(creditCardId).map(CreditCard::getBalanceHistoryString);
+        if (!legacyHistory.isPresent()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(BalanceHistoryCodec.decode(legacyHistory.get()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.shepherdmoney.interviewproject.model.BalanceIndex;
+import com.shepherdmoney.interviewproject.model.BalanceRollup;
+import com.shepherdmoney.interviewproject.model.BalanceRollupPeriod;
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.repository.BalanceRollupRepository;
+import com.shepherdmoney.interviewproject.repository.CreditCardOwnership;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.vo.response.BalanceRollupView;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains weekly and monthly rollups of the card balances and serves analytics from them.
+ *
+ * Changing the balance of a day shifts every later day, so an update rewrites the rollups of
+ * every period from the earliest changed day up to the period of the last change. Periods after
+ * that have a constant balance and are not stored, they are derived from the last stored
+ * rollup when read. The current period is never read from storage but computed from the card's
+ * read index up to today, so all periods are reported as a daily scan would see them.
+ */
+@Service
+public class BalanceRollupService {
+
+    private final BalanceRollupRepository balanceRollupRepository;
+    private final CreditCardRepository creditCardRepository;
+    private final CreditCardLookupCache creditCardLookupCache;
+    private final BalanceQueryService balanceQueryService;
+
+    @Autowired
+    public BalanceRollupService(BalanceRollupRepository balanceRollupRepository, CreditCardRepository creditCardRepository,
+                                CreditCardLookupCache creditCardLookupCache, BalanceQueryService balanceQueryService) {
+        this.balanceRollupRepository = balanceRollupRepository;
+        this.creditCardRepository = creditCardRepository;
+        this.creditCardLookupCache = creditCardLookupCache;
+        this.balanceQueryService = balanceQueryService;
+    }
+
+    /**
+     * Rewrites the rollups of the card from the period containing changedFrom onwards, given the
+     * card's updated history. Must run in the transaction that changed the balance history.
+     * Cards without rollups yet are rolled up from the start of their history.
+     */
+    public void refresh(CreditCard creditCard, BalanceIndex history, LocalDate changedFrom) {
+        if (history.isEmpty()) {
+            return;
+        }
+        LocalDate firstDate = LocalDate.ofEpochDay(history.epochDayAt(0));
+        List<BalanceRollup> rollups = new ArrayList<>();
+        for (BalanceRollupPeriod period : BalanceRollupPeriod.values()) {
+            LocalDate from;
+            if (balanceRollupRepository.existsByCreditCardIdAndPeriod(creditCard.getId(), period)) {
+                from = period.startOf(changedFrom.isBefore(firstDate) ? firstDate : changedFrom);
+                balanceRollupRepository.deleteFrom(creditCard.getId(), period, from);
+            } else {
+                from = period.startOf(firstDate);
+            }
+            rollups.addAll(rollUp(creditCard, history, period, from));
+        }
+        balanceRollupRepository.saveAll(rollups);
+    }
+
+    /**
+     * Rollups of a card for every period overlapping from..to, up to the current period. Empty if
+     * the card does not exist.
+     */
+    @Transactional
+    public Optional<List<BalanceRollupView>> rollupsOf(String creditCardNumber, BalanceRollupPeriod period, LocalDate from, LocalDate to) {
+        return creditCardLookupCache.get(creditCardNumber)
+                .map(ownership -> cardRollups(ownership, creditCardNumber, period, from, to).stream()
+                        .map(this::toView)
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Combines the monthly rollups of a card overlapping from..to into a single summary. Empty if
+     * the card does not exist or has no history in that range.
+     */
+    @Transactional
+    public Optional<BalanceRollupView> summaryOf(String creditCardNumber, LocalDate from, LocalDate to) {
+        Optional<CreditCardOwnership> ownership = creditCardLookupCache.get(creditCardNumber);
+        if (!ownership.isPresent()) {
+            return Optional.empty();
+        }
+        List<BalanceRollup> months = cardRollups(ownership.get(), creditCardNumber, BalanceRollupPeriod.MONTH, from, to);
+        if (months.isEmpty()) {
+            return Optional.empty();
+        }
+        BalanceRollup summary = newRollup(null, BalanceRollupPeriod.MONTH, months.get(0).getPeriodStart());
+        for (BalanceRollup month : months) {
+            summary.setMaxBalance(summary.getDays() == 0 ? month.getMaxBalance() : Math.max(summary.getMaxBalance(), month.getMaxBalance()));
+            summary.setDays(summary.getDays() + month.getDays());
+            summary.setBalanceSum(summary.getBalanceSum() + month.getBalanceSum());
+            summary.setEndBalance(month.getEndBalance());
+        }
+        BalanceRollupView view = toView(summary);
+        view.setPeriodEnd(toView(months.get(months.size() - 1)).getPeriodEnd());
+        return Optional.of(view);
+    }
+
+    /**
+     * Rollups over all cards of a user, per period. End balances and daily balance sums are added
+     * up across the cards, days a card did not exist yet count as a balance of 0. The maximum is
+     * the highest balance of any single card in the period.
+     */
+    @Transactional
+    public List<BalanceRollupView> userRollupsOf(int userId, BalanceRollupPeriod period, LocalDate from, LocalDate to) {
+        Map<LocalDate, BalanceRollup> combined = new TreeMap<>();
+        for (String creditCardNumber : creditCardLookupCache.cardNumbersOf(userId)) {
+            Optional<CreditCardOwnership> ownership = creditCardLookupCache.get(creditCardNumber);
+            if (!ownership.isPresent()) {
+                continue;
+            }
+            for (BalanceRollup rollup : cardRollups(ownership.get(), creditCardNumber, period, from, to)) {
+                BalanceRollup total = combined.get(rollup.getPeriodStart());
+                if (total == null) {
+                    total = newRollup(null, period, rollup.getPeriodStart());
+                    total.setMaxBalance(rollup.getMaxBalance());
+                    combined.put(rollup.getPeriodStart(), total);
+                }
+                total.setDays(Math.max(total.getDays(), rollup.getDays()));
+                total.setBalanceSum(total.getBalanceSum() + rollup.getBalanceSum());
+                total.setEndBalance(total.getEndBalance() + rollup.getEndBalance());
+                total.setMaxBalance(Math.max(total.getMaxBalance(), rollup.getMaxBalance()));
+            }
+        }
+        return combined.values().stream().map(this::toView).collect(Collectors.toList());
+    }
+
+    private List<BalanceRollup> cardRollups(CreditCardOwnership ownership, String creditCardNumber, BalanceRollupPeriod period,
+                                            LocalDate from, LocalDate to) {
+        int creditCardId = ownership.getCardId();
+        LocalDate today = LocalDate.now();
+        LocalDate currentPeriod = period.startOf(today);
+        LocalDate firstPeriod = period.startOf(from);
+        LocalDate lastPeriod = period.startOf(to.isAfter(today) ? today : to);
+
+        // Cards not updated since rollups were introduced are rolled up on first use
+        if (!balanceRollupRepository.existsByCreditCardIdAndPeriod(creditCardId, period)) {
+            balanceQueryService.indexOf(creditCardNumber).filter(index -> !index.isEmpty()).ifPresent(index ->
+                    refresh(creditCardRepository.getReferenceById(creditCardId), index, LocalDate.ofEpochDay(index.epochDayAt(0))));
+        }
+        Optional<BalanceRollup> lastStored = balanceRollupRepository.findFirstByCreditCardIdAndPeriodOrderByPeriodStartDesc(creditCardId, period);
+        if (!lastStored.isPresent()) {
+            return new ArrayList<>();
+        }
+
+        List<BalanceRollup> rollups = new ArrayList<>();
+        for (BalanceRollup rollup : balanceRollupRepository.findInRange(creditCardId, period, firstPeriod, lastPeriod)) {
+            if (rollup.getPeriodStart().isBefore(currentPeriod)) {
+                rollups.add(rollup);
+            }
+        }
+
+        // Periods after the last change keep its balance for every day
+        LocalDate flatFrom = period.next(lastStored.get().getPeriodStart());
+        double balance = lastStored.get().getEndBalance();
+        for (LocalDate periodStart = flatFrom.isBefore(firstPeriod) ? firstPeriod : flatFrom;
+             periodStart.isBefore(currentPeriod) && !periodStart.isAfter(lastPeriod);
+             periodStart = period.next(periodStart)) {
+            BalanceRollup rollup = newRollup(null, period, periodStart);
+            for (LocalDate day = periodStart; !day.isAfter(period.endOf(periodStart)); day = day.plusDays(1)) {
+                addDay(rollup, balance);
+            }
+            rollups.add(rollup);
+        }
+
+        if (!currentPeriod.isBefore(firstPeriod) && !currentPeriod.isAfter(lastPeriod)) {
+            currentRollup(creditCardNumber, period, currentPeriod, today).ifPresent(rollups::add);
+        }
+        return rollups;
+    }
+
+    /**
+     * Rollup of the current period up to today, read from the card's cached index.
+     */
+    private Optional<BalanceRollup> currentRollup(String creditCardNumber, BalanceRollupPeriod period, LocalDate periodStart, LocalDate today) {
+        Optional<BalanceIndex> index = balanceQueryService.indexOf(creditCardNumber);
+        if (!index.isPresent()) {
+            return Optional.empty();
+        }
+        BalanceRollup rollup = newRollup(null, period, periodStart);
+        try {
+            index.get().forEachDay(periodStart, today, today, (epochDay, balance) -> addDay(rollup, balance));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rollup.getDays() == 0 ? Optional.empty() : Optional.of(rollup);
+    }
+
+    /**
+     * Rolls up every period from the one starting on from up to the period of the last change,
+     * in a single pass over the change points. Balances are taken from the index, so the
+     * rollups agree with a day by day scan of it.
+     */
+    private List<BalanceRollup> rollUp(CreditCard creditCard, BalanceIndex history, BalanceRollupPeriod period, LocalDate from) {
+        LocalDate firstDate = LocalDate.ofEpochDay(history.epochDayAt(0));
+        LocalDate lastPeriod = period.startOf(LocalDate.ofEpochDay(history.epochDayAt(history.size() - 1)));
+
+        int nextChange = 0;
+        double balance = 0.0;
+        List<BalanceRollup> rollups = new ArrayList<>();
+        for (LocalDate periodStart = from; !periodStart.isAfter(lastPeriod); periodStart = period.next(periodStart)) {
+            BalanceRollup rollup = newRollup(creditCard, period, periodStart);
+            LocalDate periodEnd = period.endOf(periodStart);
+            for (LocalDate day = periodStart.isBefore(firstDate) ? firstDate : periodStart; !day.isAfter(periodEnd); day = day.plusDays(1)) {
+                while (nextChange < history.size() && history.epochDayAt(nextChange) <= day.toEpochDay()) {
+                    balance = history.balanceAt(nextChange);
+                    nextChange += 1;
+                }
+                addDay(rollup, balance);
+            }
+            rollups.add(rollup);
+        }
+        return rollups;
+    }
+
+    private BalanceRollup newRollup(CreditCard creditCard, BalanceRollupPeriod period, LocalDate periodStart) {
+        BalanceRollup rollup = new BalanceRollup();
+        rollup.setCreditCard(creditCard);
+        rollup.setPeriod(period);
+        rollup.setPeriodStart(periodStart);
+        return rollup;
+    }
+
+    private void addDay(BalanceRollup rollup, double balance) {
+        rollup.setMaxBalance(rollup.getDays() == 0 ? balance : Math.max(rollup.getMaxBalance(), balance));
+        rollup.setDays(rollup.getDays() + 1);
+        rollup.setBalanceSum(rollup.getBalanceSum() + balance);
+        rollup.setEndBalance(balance);
+    }
+
+    private BalanceRollupView toView(BalanceRollup rollup) {
+        LocalDate periodEnd = rollup.getPeriod().endOf(rollup.getPeriodStart());
+        LocalDate today = LocalDate.now();
+        return new BalanceRollupView(rollup.getPeriodStart(), periodEnd.isAfter(today) ? today : periodEnd, rollup.getDays(),
+                rollup.getEndBalance(), rollup.getDays() == 0 ? 0.0 : rollup.getBalanceSum() / rollup.getDays(),
+                rollup.getMaxBalance());
+    }
+}
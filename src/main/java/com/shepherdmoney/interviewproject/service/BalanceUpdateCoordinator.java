@@ -0,0 +1,154 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.shepherdmoney.interviewproject.vo.request.UpdateBalancePayload;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Entry point for balance updates that keeps writers of the same card from overwriting each
+ * other without serializing unrelated cards.
+ *
+ * Writers of a card queue their payloads. The first one becomes the card's leader and applies
+ * everything queued so far as a single merge, repeating until the queue is empty, while the
+ * other writers wait for the merge that contains their payloads. Payloads coalesced this way
+ * are merged as if they had been sent in one upload, in arrival order. Conflicts with writers
+ * outside this process are caught by the card's version and retried.
+ *
+ * A group that sets exactly the balances of the last group applied to the card is a replay and
+ * returns right away, see BalanceUpdateDeduplicator.
+ */
+@Service
+public class BalanceUpdateCoordinator {
+
+    private static class PendingUpdate {
+        private final List<UpdateBalancePayload> payloads;
+        private final byte[] fingerprint;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        PendingUpdate(List<UpdateBalancePayload> payloads, byte[] fingerprint) {
+            this.payloads = payloads;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private static class CardQueue {
+        private final List<PendingUpdate> pending = new ArrayList<>();
+        private boolean draining;
+        // Set once the queue has been removed from the map, writers must then look it up again
+        private boolean retired;
+    }
+
+    private final BalanceHistoryService balanceHistoryService;
+    private final BalanceUpdateDeduplicator balanceUpdateDeduplicator;
+    private final int maxRetries;
+    private final ConcurrentHashMap<String, CardQueue> queues = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BalanceUpdateCoordinator(BalanceHistoryService balanceHistoryService, BalanceUpdateDeduplicator balanceUpdateDeduplicator,
+                                    @Value("${balance-update.max-retries:3}") int maxRetries) {
+        this.balanceHistoryService = balanceHistoryService;
+        this.balanceUpdateDeduplicator = balanceUpdateDeduplicator;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Applies the payloads of one card. Returns 1 on success and -1 if the card does not exist
+     * or the update failed, like BalanceHistoryService#customAddBalanceEntry.
+     */
+    public int apply(String creditCardNumber, List<UpdateBalancePayload> payloads) {
+        byte[] fingerprint = balanceUpdateDeduplicator.fingerprint(payloads);
+        if (balanceUpdateDeduplicator.isLastApplied(creditCardNumber, fingerprint)) {
+            return 1;
+        }
+        PendingUpdate update = new PendingUpdate(payloads, fingerprint);
+        while (true) {
+            CardQueue queue = queues.computeIfAbsent(creditCardNumber, k -> new CardQueue());
+            boolean leader;
+            synchronized (queue) {
+                if (queue.retired) {
+                    continue;
+                }
+                queue.pending.add(update);
+                leader = !queue.draining;
+                queue.draining = true;
+            }
+            if (leader) {
+                drain(creditCardNumber, queue);
+            }
+            return update.result.join();
+        }
+    }
+
+    private void drain(String creditCardNumber, CardQueue queue) {
+        List<PendingUpdate> batch = null;
+        try {
+            while (true) {
+                synchronized (queue) {
+                    if (queue.pending.isEmpty()) {
+                        retire(creditCardNumber, queue);
+                        return;
+                    }
+                    batch = new ArrayList<>(queue.pending);
+                    queue.pending.clear();
+                }
+
+                List<UpdateBalancePayload> merged = new ArrayList<>();
+                for (PendingUpdate update : batch) {
+                    merged.addAll(update.payloads);
+                }
+                int result = applyWithRetry(merged);
+                // The last group of the merge is the one whose balances the card now has
+                balanceUpdateDeduplicator.markApplied(creditCardNumber, result == 1 ? batch.get(batch.size() - 1).fingerprint : null);
+                for (PendingUpdate update : batch) {
+                    update.result.complete(result);
+                }
+                batch = null;
+            }
+        } catch (Throwable e) {
+            // Only errors get here, fail the batch and the writers queued behind it so that
+            // none of them waits forever, and let the next writer start a new queue
+            List<PendingUpdate> abandoned;
+            synchronized (queue) {
+                abandoned = new ArrayList<>(queue.pending);
+                queue.pending.clear();
+                retire(creditCardNumber, queue);
+            }
+            if (batch != null) {
+                abandoned.addAll(0, batch);
+            }
+            for (PendingUpdate update : abandoned) {
+                update.result.completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    // Caller holds the queue's lock
+    private void retire(String creditCardNumber, CardQueue queue) {
+        queue.draining = false;
+        queue.retired = true;
+        queues.remove(creditCardNumber, queue);
+    }
+
+    private int applyWithRetry(List<UpdateBalancePayload> payloads) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return balanceHistoryService.customAddBalanceEntry(payloads);
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxRetries) {
+                    return -1;
+                }
+            } catch (RuntimeException e) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shepherdmoney.interviewproject.repository.CreditCardOwnership;
+import com.shepherdmoney.interviewproject.vo.request.UpdateBalancePayload;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Bounded stores that let retried balance uploads skip work that was already done.
+ *
+ * Idempotency keys map a client supplied key to the response of the request that first used
+ * it, so a replay is answered before its body is even parsed. Fingerprints hold, per card, a
+ * hash of the last payload group applied to it. Setting the same balances again right after
+ * they were set cannot change the history, so a group whose fingerprint matches is reported
+ * as applied without touching the database. A card deleted and added again gets a new id and
+ * therefore starts without a fingerprint.
+ *
+ * Both stores are local to this process, like the other caches in front of the database. With
+ * several instances writing the same cards the fingerprints must be disabled.
+ */
+@Component
+public class BalanceUpdateDeduplicator {
+
+    private static class IdempotentRequest {
+        private final byte[] requestHash;
+        private final CompletableFuture<Object> response = new CompletableFuture<>();
+
+        IdempotentRequest(byte[] requestHash) {
+            this.requestHash = requestHash;
+        }
+    }
+
+    private final CreditCardLookupCache creditCardLookupCache;
+    private final Cache<String, IdempotentRequest> idempotencyKeys;
+    private final Cache<Integer, byte[]> fingerprints;
+    private final boolean fingerprintsEnabled;
+
+    @Autowired
+    public BalanceUpdateDeduplicator(CreditCardLookupCache creditCardLookupCache, MeterRegistry meterRegistry,
+                                     @Value("${balance-update.dedup.idempotency-keys.max-size:100000}") long maxKeys,
+                                     @Value("${balance-update.dedup.idempotency-keys.ttl-minutes:1440}") long keyTtlMinutes,
+                                     @Value("${balance-update.dedup.fingerprints.enabled:true}") boolean fingerprintsEnabled,
+                                     @Value("${balance-update.dedup.fingerprints.max-size:100000}") long maxFingerprints) {
+        this.creditCardLookupCache = creditCardLookupCache;
+        this.idempotencyKeys = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(Duration.ofMinutes(keyTtlMinutes))
+                .recordStats()
+                .build();
+        this.fingerprints = Caffeine.newBuilder()
+                .maximumSize(maxFingerprints)
+                .recordStats()
+                .build();
+        this.fingerprintsEnabled = fingerprintsEnabled;
+        CaffeineCacheMetrics.monitor(meterRegistry, idempotencyKeys, "balanceUpdateIdempotencyKeys");
+        CaffeineCacheMetrics.monitor(meterRegistry, fingerprints, "balanceUpdateFingerprints");
+    }
+
+    /**
+     * Runs the update once per idempotency key. A request that reuses a key with the same body
+     * gets the first response, waiting for it if the first request is still running. Returns
+     * an empty optional if the key was used with a different body. A failed update releases
+     * the key so that the client can retry it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> once(String idempotencyKey, byte[] body, Supplier<T> update) {
+        IdempotentRequest request = new IdempotentRequest(sha256(body));
+        IdempotentRequest previous = idempotencyKeys.asMap().putIfAbsent(idempotencyKey, request);
+        if (previous != null) {
+            if (!MessageDigest.isEqual(previous.requestHash, request.requestHash)) {
+                return Optional.empty();
+            }
+            return Optional.of((T) previous.response.join());
+        }
+        try {
+            T response = update.get();
+            request.response.complete(response);
+            return Optional.of(response);
+        } catch (RuntimeException e) {
+            idempotencyKeys.asMap().remove(idempotencyKey, request);
+            request.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Hash of the balances a payload group sets. Later payloads of the same date win, as when
+     * the group is applied, so groups that set the same balances have the same fingerprint.
+     * Returns null for groups that cannot be fingerprinted.
+     */
+    public byte[] fingerprint(List<UpdateBalancePayload> payloads) {
+        if (!fingerprintsEnabled) {
+            return null;
+        }
+        TreeMap<LocalDate, Double> balances = new TreeMap<>();
+        for (UpdateBalancePayload payload : payloads) {
+            if (payload.getBalanceDate() == null) {
+                return null;
+            }
+            balances.put(payload.getBalanceDate(), payload.getBalanceAmount());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(balances.size() * 2 * Long.BYTES);
+        for (Map.Entry<LocalDate, Double> balance : balances.entrySet()) {
+            buffer.putLong(balance.getKey().toEpochDay());
+            buffer.putLong(Double.doubleToLongBits(balance.getValue()));
+        }
+        return sha256(buffer.array());
+    }
+
+    /**
+     * Whether the fingerprint is the one of the last group applied to the card.
+     */
+    public boolean isLastApplied(String creditCardNumber, byte[] fingerprint) {
+        if (fingerprint == null) {
+            return false;
+        }
+        Optional<CreditCardOwnership> ownership = creditCardLookupCache.get(creditCardNumber);
+        if (!ownership.isPresent()) {
+            return false;
+        }
+        byte[] lastApplied = fingerprints.getIfPresent(ownership.get().getCardId());
+        return lastApplied != null && MessageDigest.isEqual(lastApplied, fingerprint);
+    }
+
+    /**
+     * Records the group applied last to the card, or forgets the card's fingerprint if the
+     * group could not be fingerprinted or the update failed.
+     */
+    public void markApplied(String creditCardNumber, byte[] fingerprint) {
+        Optional<CreditCardOwnership> ownership = creditCardLookupCache.get(creditCardNumber);
+        if (!ownership.isPresent()) {
+            return;
+        }
+        if (fingerprint == null) {
+            fingerprints.invalidate(ownership.get().getCardId());
+        } else {
+            fingerprints.put(ownership.get().getCardId(), fingerprint);
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
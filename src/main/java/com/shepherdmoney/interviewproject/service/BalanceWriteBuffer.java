@@ -0,0 +1,347 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.shepherdmoney.interviewproject.vo.request.UpdateBalancePayload;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for balance updates that arrive a few at a time.
+ *
+ * Accepted payloads are appended to a local log, synced to disk, and kept in memory grouped by
+ * card. Every windowMs, or as soon as maxSize payloads are pending, each card's payloads are
+ * sorted by date and applied in a single update through the BalanceUpdateCoordinator. For the
+ * same date, the payload accepted last wins.
+ *
+ * While a flush runs, the log it covers is kept aside as logPath.flushing and removed once the
+ * flush is done. Payloads of a flush that could not be applied, other than those of cards that
+ * no longer exist, stay in that file and are queued again for the next flush, which appends its
+ * log to the same file. On startup both files are replayed, so payloads accepted before a crash
+ * are applied at least once. Pending payloads are flushed on shutdown.
+ *
+ * Buffered payloads are applied in the order they were accepted, but not in order with updates
+ * made directly. A buffered balance overwrites a balance of the same date set directly after
+ * it was accepted, and a replay after a crash can overwrite balances set since. Clients that
+ * mix both paths for the same card and date must not rely on the later update winning.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "balance-update.write-buffer.enabled", havingValue = "true")
+public class BalanceWriteBuffer {
+
+    private final BalanceUpdateCoordinator balanceUpdateCoordinator;
+    private final CreditCardLookupCache creditCardLookupCache;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader payloadReader;
+    private final long windowMs;
+    private final int maxSize;
+    private final Path logPath;
+    private final Path flushingLogPath;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    // Guards pending, pendingCount and logChannel, the flush itself runs under flushLock
+    private final Object lock = new Object();
+    private final Object flushLock = new Object();
+    private Map<String, List<UpdateBalancePayload>> pending = new LinkedHashMap<>();
+    private int pendingCount;
+    private FileChannel logChannel;
+
+    @Autowired
+    public BalanceWriteBuffer(BalanceUpdateCoordinator balanceUpdateCoordinator, CreditCardLookupCache creditCardLookupCache,
+                              ObjectMapper objectMapper,
+                              @Value("${balance-update.write-buffer.window-ms:1000}") long windowMs,
+                              @Value("${balance-update.write-buffer.max-size:10000}") int maxSize,
+                              @Value("${balance-update.write-buffer.log-path:data/balance-updates.log}") String logPath) throws IOException {
+        this.balanceUpdateCoordinator = balanceUpdateCoordinator;
+        this.creditCardLookupCache = creditCardLookupCache;
+        this.objectMapper = objectMapper;
+        this.payloadReader = objectMapper.readerFor(UpdateBalancePayload.class);
+        this.windowMs = windowMs;
+        this.maxSize = maxSize;
+        this.logPath = Paths.get(logPath);
+        this.flushingLogPath = Paths.get(logPath + ".flushing");
+        recover();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, 0, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Durably records the payloads and queues them for the next flush. Returns once they are
+     * synced to the log.
+     */
+    public void submit(List<UpdateBalancePayload> payloads) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        try {
+            for (UpdateBalancePayload payload : payloads) {
+                records.write(objectMapper.writeValueAsBytes(payload));
+                records.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        boolean full;
+        synchronized (lock) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+                while (buffer.hasRemaining()) {
+                    logChannel.write(buffer);
+                }
+                logChannel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (UpdateBalancePayload payload : payloads) {
+                pending.computeIfAbsent(payload.getCreditCardNumber(), k -> new ArrayList<>()).add(payload);
+            }
+            pendingCount += payloads.size();
+            full = pendingCount >= maxSize;
+        }
+        if (full) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Applies everything pending. Payloads submitted while the flush runs go to the next one,
+     * as do the payloads this flush failed to apply.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, List<UpdateBalancePayload>> batch;
+            synchronized (lock) {
+                if (pendingCount == 0) {
+                    return;
+                }
+                try {
+                    logChannel.close();
+                    moveLogToFlushing();
+                    logChannel = openLog();
+                } catch (IOException e) {
+                    reopenLog();
+                    throw new UncheckedIOException(e);
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                pendingCount = 0;
+            }
+
+            Map<String, List<UpdateBalancePayload>> failed = new LinkedHashMap<>();
+            for (Map.Entry<String, List<UpdateBalancePayload>> entry : batch.entrySet()) {
+                // List.sort is stable, so later submissions for the same date are applied last
+                List<UpdateBalancePayload> payloads = entry.getValue();
+                payloads.sort(Comparator.comparing(UpdateBalancePayload::getBalanceDate));
+                if (!apply(entry.getKey(), payloads)) {
+                    failed.put(entry.getKey(), payloads);
+                }
+            }
+
+            try {
+                if (failed.isEmpty()) {
+                    Files.deleteIfExists(flushingLogPath);
+                } else {
+                    rewriteFlushingLog(failed);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                requeue(failed);
+            }
+        }
+    }
+
+    /**
+     * Applies the payloads of one card. Returns false if they should be applied again, cards
+     * that no longer exist are dropped as with a direct update.
+     */
+    private boolean apply(String creditCardNumber, List<UpdateBalancePayload> payloads) {
+        try {
+            if (balanceUpdateCoordinator.apply(creditCardNumber, payloads) == 1) {
+                return true;
+            }
+            if (!creditCardLookupCache.get(creditCardNumber).isPresent()) {
+                return true;
+            }
+            log.warn("Buffered update of card {} failed, retrying with the next flush", creditCardNumber);
+        } catch (RuntimeException e) {
+            log.warn("Buffered update of card {} failed, retrying with the next flush", creditCardNumber, e);
+        }
+        return false;
+    }
+
+    /**
+     * Puts failed payloads back in front of the ones submitted since, so that the order of
+     * submission is kept.
+     */
+    private void requeue(Map<String, List<UpdateBalancePayload>> failed) {
+        if (failed.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            Map<String, List<UpdateBalancePayload>> requeued = new LinkedHashMap<>(failed);
+            for (Map.Entry<String, List<UpdateBalancePayload>> entry : pending.entrySet()) {
+                requeued.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+            }
+            for (List<UpdateBalancePayload> payloads : failed.values()) {
+                pendingCount += payloads.size();
+            }
+            pending = requeued;
+        }
+    }
+
+    // An exception would cancel the periodic flush, failed payloads stay pending for the next one
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Flushing the balance write buffer failed", e);
+        }
+    }
+
+    public int pendingCount() {
+        synchronized (lock) {
+            return pendingCount;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        flush();
+        synchronized (lock) {
+            logChannel.close();
+        }
+    }
+
+    /**
+     * Loads the records of an interrupted flush and of the current log back into memory and
+     * rewrites them as a single log, oldest first.
+     */
+    private void recover() throws IOException {
+        List<String> records = new ArrayList<>();
+        readRecords(flushingLogPath, records);
+        readRecords(logPath, records);
+
+        Path recoveredLogPath = Paths.get(logPath + ".recovered");
+        Files.write(recoveredLogPath, records, StandardCharsets.UTF_8);
+        Files.move(recoveredLogPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(flushingLogPath);
+
+        for (String record : records) {
+            UpdateBalancePayload payload = payloadReader.readValue(record);
+            pending.computeIfAbsent(payload.getCreditCardNumber(), k -> new ArrayList<>()).add(payload);
+            pendingCount += 1;
+        }
+        logChannel = openLog();
+    }
+
+    /**
+     * Reads the complete records of a log. A trailing partial line, left by a crash in the
+     * middle of an append that was never acknowledged, is skipped.
+     */
+    private void readRecords(Path path, List<String> records) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        String content = Files.readString(path, StandardCharsets.UTF_8);
+        int end = content.lastIndexOf('\n');
+        if (end < 0) {
+            return;
+        }
+        content.substring(0, end).lines()
+                .filter(line -> !line.isBlank())
+                .forEach(records::add);
+    }
+
+    private void reopenLog() {
+        try {
+            if (!logChannel.isOpen()) {
+                logChannel = openLog();
+            }
+        } catch (IOException e) {
+            log.error("Could not reopen the balance write buffer log {}", logPath, e);
+        }
+    }
+
+    /**
+     * Sets the current log aside for a flush. If payloads of an earlier flush are still kept
+     * aside, the log is appended to them so that they are not overwritten.
+     */
+    private void moveLogToFlushing() throws IOException {
+        if (!Files.exists(flushingLogPath)) {
+            Files.move(logPath, flushingLogPath, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        try (FileChannel flushingLog = FileChannel.open(flushingLogPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileChannel currentLog = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = currentLog.size();
+            while (position < size) {
+                position += currentLog.transferTo(position, size - position, flushingLog);
+            }
+            flushingLog.force(false);
+        }
+        Files.delete(logPath);
+    }
+
+    /**
+     * Replaces the set-aside log with the payloads that still have to be applied.
+     */
+    private void rewriteFlushingLog(Map<String, List<UpdateBalancePayload>> failed) throws IOException {
+        Path rewrittenLogPath = Paths.get(flushingLogPath + ".rewritten");
+        try (FileChannel rewrittenLog = FileChannel.open(rewrittenLogPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (List<UpdateBalancePayload> payloads : failed.values()) {
+                for (UpdateBalancePayload payload : payloads) {
+                    ByteBuffer buffer = ByteBuffer.wrap((objectMapper.writeValueAsString(payload) + "\n").getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        rewrittenLog.write(buffer);
+                    }
+                }
+            }
+            rewrittenLog.force(false);
+        }
+        Files.move(rewrittenLogPath, flushingLogPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private FileChannel openLog() throws IOException {
+        Path parent = logPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,79 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.shepherdmoney.interviewproject.model.CardNumberKey;
+import com.shepherdmoney.interviewproject.repository.CreditCardOwnership;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bounded read-through cache from card number to the card id and owner id.
+ *
+ * Backed by Caffeine (W-TinyLFU eviction). Unknown card numbers are not cached, so a card
+ * becomes visible as soon as it is created. Entries are invalidated when a card is added
+ * under an existing number and when the owning user is deleted.
+ */
+@Component
+public class CreditCardLookupCache {
+
+    private final CreditCardRepository creditCardRepository;
+    private final Cache<String, CreditCardOwnership> cache;
+
+    @Autowired
+    public CreditCardLookupCache(CreditCardRepository creditCardRepository, MeterRegistry meterRegistry,
+                                 @Value("${credit-card.lookup-cache.max-size:100000}") long maxSize) {
+        this.creditCardRepository = creditCardRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "creditCardLookup");
+    }
+
+    public Optional<CreditCardOwnership> get(String creditCardNumber) {
+        return Optional.ofNullable(cache.get(creditCardNumber, number -> load(number).orElse(null)));
+    }
+
+    // Numeric card numbers are looked up through the packed key index
+    private Optional<CreditCardOwnership> load(String creditCardNumber) {
+        Long numberKey = CardNumberKey.encode(creditCardNumber);
+        if (numberKey != null) {
+            return creditCardRepository.findOwnershipByNumberKey(numberKey);
+        }
+        return creditCardRepository.findOwnershipByNumber(creditCardNumber);
+    }
+
+    public void invalidate(String creditCardNumber) {
+        cache.invalidate(creditCardNumber);
+    }
+
+    /**
+     * Card numbers of a user, to be passed to invalidateAll once the user has been deleted.
+     */
+    public List<String> cardNumbersOf(int userId) {
+        return creditCardRepository.findNumbersByOwnerId(userId);
+    }
+
+    public void invalidateAll(List<String> creditCardNumbers) {
+        cache.invalidateAll(creditCardNumbers);
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
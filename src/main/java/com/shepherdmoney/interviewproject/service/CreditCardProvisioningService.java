@@ -0,0 +1,84 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.model.User;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.vo.request.AddCreditCardToUserPayload;
+import com.shepherdmoney.interviewproject.vo.response.CardProvisioningResult;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Adds many credit cards in one go. All referenced users are validated with a single query,
+ * existing card numbers with another, and the new cards are inserted in JDBC batches. Owners
+ * are only referenced, their card collections are neither loaded nor saved again.
+ */
+@Service
+public class CreditCardProvisioningService {
+
+    private final CreditCardRepository creditCardRepository;
+    private final UserRepository userRepository;
+    private final CreditCardLookupCache creditCardLookupCache;
+    private final UserPortfolioService userPortfolioService;
+
+    @Autowired
+    public CreditCardProvisioningService(CreditCardRepository creditCardRepository, UserRepository userRepository,
+                                         CreditCardLookupCache creditCardLookupCache, UserPortfolioService userPortfolioService) {
+        this.creditCardRepository = creditCardRepository;
+        this.userRepository = userRepository;
+        this.creditCardLookupCache = creditCardLookupCache;
+        this.userPortfolioService = userPortfolioService;
+    }
+
+    /**
+     * Returns one result per payload, in the same order.
+     */
+    @Transactional
+    public List<CardProvisioningResult> addCreditCards(List<AddCreditCardToUserPayload> payloads) {
+        Set<Integer> userIds = payloads.stream().map(AddCreditCardToUserPayload::getUserId).collect(Collectors.toSet());
+        Map<Integer, User> users = userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        Set<String> usedNumbers = new HashSet<>(creditCardRepository.findExistingNumbers(
+                payloads.stream().map(AddCreditCardToUserPayload::getCardNumber).collect(Collectors.toSet())));
+
+        List<CardProvisioningResult> results = new ArrayList<>();
+        List<CreditCard> newCards = new ArrayList<>();
+        List<CardProvisioningResult> newCardResults = new ArrayList<>();
+        for (AddCreditCardToUserPayload payload : payloads) {
+            CardProvisioningResult result = new CardProvisioningResult(payload.getCardNumber(), -1, null);
+            results.add(result);
+            User user = users.get(payload.getUserId());
+            if (user == null || user.isDeleted()) {
+                result.setError("User with ID " + payload.getUserId() + " does not exist");
+            } else if (payload.getCardNumber() == null || !usedNumbers.add(payload.getCardNumber())) {
+                result.setError("Credit card number is missing or already exists");
+            } else {
+                CreditCard creditCard = new CreditCard();
+                creditCard.setIssuanceBank(payload.getCardIssuanceBank());
+                creditCard.setNumber(payload.getCardNumber());
+                creditCard.setOwner(user);
+                newCards.add(creditCard);
+                newCardResults.add(result);
+            }
+        }
+
+        creditCardRepository.saveAll(newCards);
+        for (int i = 0; i < newCards.size(); i++) {
+            newCardResults.get(i).setCardId(newCards.get(i).getId());
+            creditCardLookupCache.invalidate(newCards.get(i).getNumber());
+            userPortfolioService.invalidate(newCards.get(i).getOwner().getId());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,163 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shepherdmoney.interviewproject.repository.BalanceRollupRepository;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.store.BalanceHistoryStore;
+import com.shepherdmoney.interviewproject.vo.response.UserDeletionProgress;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes users asynchronously.
+ *
+ * The user is first tombstoned, which hides it and its cards from every endpoint right away.
+ * The same transaction increments the version of each of its cards, so a balance update that
+ * loaded a card before the tombstone fails on commit and one that loads it afterwards does not
+ * find it. No history can therefore be written behind the purge.
+ * Its balance history rows, then its cards with their rollups, then the user row itself are removed afterwards
+ * with set-based deletes of at most chunkSize rows, each chunk in its own short transaction.
+ * A failed purge is started again after a delay, and tombstoned users that were not fully
+ * removed are picked up again on startup. Finished deletions stay queryable for a while.
+ */
+@Slf4j
+@Service
+public class UserDeletionService {
+
+    private final UserRepository userRepository;
+    private final CreditCardRepository creditCardRepository;
+    private final BalanceHistoryStore balanceHistoryStore;
+    private final BalanceRollupRepository balanceRollupRepository;
+    private final CreditCardLookupCache creditCardLookupCache;
+    private final UserPortfolioService userPortfolioService;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService userDeletionExecutor;
+    private final int chunkSize;
+    private final long retryDelaySeconds;
+    // Deletions that are running or waiting for a retry
+    private final Map<Integer, UserDeletionProgress> deletions = new ConcurrentHashMap<>();
+    private final Cache<Integer, UserDeletionProgress> finished;
+
+    @Autowired
+    public UserDeletionService(UserRepository userRepository, CreditCardRepository creditCardRepository,
+                               BalanceHistoryStore balanceHistoryStore, BalanceRollupRepository balanceRollupRepository,
+                               CreditCardLookupCache creditCardLookupCache, UserPortfolioService userPortfolioService,
+                               PlatformTransactionManager transactionManager,
+                               @Qualifier("userDeletionExecutor") ScheduledExecutorService userDeletionExecutor,
+                               @Value("${user-deletion.chunk-size:1000}") int chunkSize,
+                               @Value("${user-deletion.retry-delay-seconds:60}") long retryDelaySeconds,
+                               @Value("${user-deletion.finished.max-size:10000}") long maxFinished,
+                               @Value("${user-deletion.finished.ttl-minutes:60}") long finishedTtlMinutes) {
+        this.userRepository = userRepository;
+        this.creditCardRepository = creditCardRepository;
+        this.balanceHistoryStore = balanceHistoryStore;
+        this.balanceRollupRepository = balanceRollupRepository;
+        this.creditCardLookupCache = creditCardLookupCache;
+        this.userPortfolioService = userPortfolioService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.userDeletionExecutor = userDeletionExecutor;
+        this.chunkSize = chunkSize;
+        this.retryDelaySeconds = retryDelaySeconds;
+        this.finished = Caffeine.newBuilder()
+                .maximumSize(maxFinished)
+                .expireAfterWrite(Duration.ofMinutes(finishedTtlMinutes))
+                .build();
+    }
+
+    /**
+     * Tombstones the user and schedules the removal of its data. Returns false if the user does
+     * not exist or is already being deleted.
+     */
+    public boolean deleteUser(int userId) {
+        Boolean tombstoned = transactionTemplate.execute(status -> {
+            if (userRepository.markDeleted(userId) != 1) {
+                return false;
+            }
+            creditCardRepository.incrementVersionsByOwnerId(userId);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(tombstoned)) {
+            return false;
+        }
+        List<String> cardNumbers = creditCardLookupCache.cardNumbersOf(userId);
+        creditCardLookupCache.invalidateAll(cardNumbers);
+        userPortfolioService.invalidate(userId);
+        schedule(userId);
+        return true;
+    }
+
+    public Optional<UserDeletionProgress> progressOf(int userId) {
+        UserDeletionProgress progress = deletions.get(userId);
+        return Optional.ofNullable(progress != null ? progress : finished.getIfPresent(userId));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingDeletions() {
+        for (Integer userId : userRepository.findDeletedIds()) {
+            schedule(userId);
+        }
+    }
+
+    private void schedule(int userId) {
+        UserDeletionProgress progress = new UserDeletionProgress(userId);
+        deletions.put(userId, progress);
+        userDeletionExecutor.submit(() -> purge(progress));
+    }
+
+    private void purge(UserDeletionProgress progress) {
+        int userId = progress.getUserId();
+        try {
+            List<Integer> creditCardIds = creditCardRepository.findIdsByOwnerId(userId, Pageable.unpaged());
+            int deleted;
+            do {
+                deleted = transactionTemplate.execute(status -> balanceHistoryStore.deleteChunk(creditCardIds, chunkSize));
+                progress.setDeletedBalanceHistoryRows(progress.getDeletedBalanceHistoryRows() + deleted);
+            } while (deleted > 0);
+
+            do {
+                deleted = transactionTemplate.execute(status -> {
+                    List<Integer> ids = creditCardRepository.findIdsByOwnerId(userId, PageRequest.of(0, chunkSize));
+                    if (ids.isEmpty()) {
+                        return 0;
+                    }
+                    balanceRollupRepository.deleteByCreditCardIds(ids);
+                    return creditCardRepository.deleteByIds(ids);
+                });
+                progress.setDeletedCreditCards(progress.getDeletedCreditCards() + deleted);
+            } while (deleted > 0);
+
+            transactionTemplate.execute(status -> userRepository.deleteTombstoned(userId));
+            progress.setStatus(UserDeletionProgress.Status.COMPLETED);
+            finished.put(userId, progress);
+            deletions.remove(userId, progress);
+        } catch (Exception e) {
+            log.warn("Purging deleted user {} failed, retrying in {} s", userId, retryDelaySeconds, e);
+            progress.setStatus(UserDeletionProgress.Status.FAILED);
+            userDeletionExecutor.schedule(() -> {
+                progress.setStatus(UserDeletionProgress.Status.IN_PROGRESS);
+                purge(progress);
+            }, retryDelaySeconds, TimeUnit.SECONDS);
+        }
+    }
+}
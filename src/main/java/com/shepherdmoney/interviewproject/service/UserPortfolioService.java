@@ -0,0 +1,148 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shepherdmoney.interviewproject.model.BalanceIndex;
+import com.shepherdmoney.interviewproject.vo.response.BalanceView;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Serves the summed daily balance over all cards of a user.
+ *
+ * The card indexes of the user are k-way merged by date into a single {@link BalanceIndex}
+ * whose change points carry the summed changes of all cards on that day. Merging costs
+ * O(n log k) for n change points over k cards, and the result is cached per user until one of
+ * the user's cards is added, removed or updated. Users with at least parallelThreshold cards
+ * have their card indexes loaded in parallel.
+ */
+@Service
+public class UserPortfolioService {
+
+    private final CreditCardLookupCache creditCardLookupCache;
+    private final BalanceQueryService balanceQueryService;
+    private final ExecutorService portfolioExecutor;
+    private final int parallelThreshold;
+    private final Cache<Integer, BalanceIndex> portfolios;
+
+    @Autowired
+    public UserPortfolioService(CreditCardLookupCache creditCardLookupCache, BalanceQueryService balanceQueryService,
+                                @Qualifier("portfolioExecutor") ExecutorService portfolioExecutor, MeterRegistry meterRegistry,
+                                @Value("${portfolio.parallel-threshold:8}") int parallelThreshold,
+                                @Value("${portfolio.cache.max-size:10000}") long maxSize) {
+        this.creditCardLookupCache = creditCardLookupCache;
+        this.balanceQueryService = balanceQueryService;
+        this.portfolioExecutor = portfolioExecutor;
+        this.parallelThreshold = parallelThreshold;
+        this.portfolios = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, portfolios, "userPortfolio");
+    }
+
+    /**
+     * Summed balance of the user's cards for every day between from and to (inclusive) on which
+     * at least one card has a history. A card counts as 0 before its history starts.
+     */
+    public List<BalanceView> dailyBalancesOf(int userId, LocalDate from, LocalDate to) {
+        BalanceIndex portfolio = portfolios.get(userId, this::load);
+        List<BalanceView> balances = new ArrayList<>();
+        try {
+            portfolio.forEachDay(from, to, LocalDate.now(),
+                    (epochDay, balance) -> balances.add(new BalanceView(LocalDate.ofEpochDay(epochDay), balance)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return balances;
+    }
+
+    public void invalidate(int userId) {
+        portfolios.invalidate(userId);
+    }
+
+    private BalanceIndex load(int userId) {
+        List<String> creditCardNumbers = creditCardLookupCache.cardNumbersOf(userId);
+        List<BalanceIndex> indexes = new ArrayList<>();
+        if (creditCardNumbers.size() < parallelThreshold) {
+            for (String creditCardNumber : creditCardNumbers) {
+                balanceQueryService.indexOf(creditCardNumber).ifPresent(indexes::add);
+            }
+            return merge(indexes);
+        }
+
+        List<Future<Optional<BalanceIndex>>> pending = new ArrayList<>();
+        for (String creditCardNumber : creditCardNumbers) {
+            pending.add(portfolioExecutor.submit(() -> balanceQueryService.indexOf(creditCardNumber)));
+        }
+        try {
+            for (Future<Optional<BalanceIndex>> index : pending) {
+                index.get().ifPresent(indexes::add);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+        return merge(indexes);
+    }
+
+    /**
+     * K-way merge of the change points of all cards. Changes of several cards on the same day
+     * are combined into one change point.
+     */
+    private static BalanceIndex merge(List<BalanceIndex> indexes) {
+        int total = 0;
+        // Each head is {card, position of its next change point}
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Comparator.comparingInt((int[] head) -> indexes.get(head[0]).epochDayAt(head[1])));
+        for (int i = 0; i < indexes.size(); i++) {
+            total += indexes.get(i).size();
+            if (!indexes.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+
+        int[] epochDays = new int[total];
+        double[] deltas = new double[total];
+        int count = 0;
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            BalanceIndex index = indexes.get(head[0]);
+            int epochDay = index.epochDayAt(head[1]);
+            double delta = index.balanceAt(head[1]) - (head[1] > 0 ? index.balanceAt(head[1] - 1) : 0.0);
+            if (count > 0 && epochDays[count - 1] == epochDay) {
+                deltas[count - 1] += delta;
+            } else {
+                epochDays[count] = epochDay;
+                deltas[count] = delta;
+                count += 1;
+            }
+            head[1] += 1;
+            if (head[1] < index.size()) {
+                heads.add(head);
+            }
+        }
+        return new BalanceIndex(Arrays.copyOf(epochDays, count), Arrays.copyOf(deltas, count));
+    }
+}
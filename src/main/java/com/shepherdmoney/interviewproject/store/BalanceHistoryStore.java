@@ -0,0 +1,53 @@
+package com.shepherdmoney.interviewproject.store;
+
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.repository.BalanceChange;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistence of the balance change points of the credit cards. The cards themselves always
+ * live in the database, the change points are kept either in the database through JPA
+ * ({@link JpaBalanceHistoryStore}, the default) or in an embedded append-only segment log
+ * ({@link SegmentBalanceHistoryStore}), selected with balance-store.type.
+ */
+public interface BalanceHistoryStore {
+
+    /**
+     * Receives the change points of a full scan.
+     */
+    @FunctionalInterface
+    interface ChangeConsumer {
+        void accept(int creditCardId, int epochDay, double delta);
+    }
+
+    /**
+     * Opens the history of the card for a single update. Must be called inside the transaction
+     * of the update, the changes become visible once it commits.
+     */
+    BalanceHistoryWriter open(CreditCard creditCard);
+
+    /**
+     * Change points of the card in chronological order.
+     */
+    List<BalanceChange> findChanges(int creditCardId);
+
+    /**
+     * Up to limit change points of the card after the given date, in chronological order. A
+     * null date starts at the beginning of the history.
+     */
+    List<BalanceChange> findChanges(int creditCardId, LocalDate afterExclusive, int limit);
+
+    /**
+     * Calls the consumer for every change point of every card, ordered by card id and date.
+     */
+    void forEachChange(ChangeConsumer consumer);
+
+    /**
+     * Removes up to limit change points of the given cards. Returns the number removed, 0 once
+     * the cards have no history left.
+     */
+    int deleteChunk(Collection<Integer> creditCardIds, int limit);
+}
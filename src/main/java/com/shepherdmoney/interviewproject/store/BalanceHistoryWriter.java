@@ -0,0 +1,32 @@
+package com.shepherdmoney.interviewproject.store;
+
+import com.shepherdmoney.interviewproject.model.BalanceHistory;
+import com.shepherdmoney.interviewproject.model.BalanceTimeline;
+
+import java.time.LocalDate;
+
+/**
+ * Changes to the history of one card within one update. All changes go through the writer so
+ * that the store knows which change points to persist.
+ */
+public interface BalanceHistoryWriter {
+
+    BalanceTimeline timeline();
+
+    /**
+     * Adds a change point for a date that has none yet.
+     */
+    BalanceHistory add(LocalDate date, double delta);
+
+    /**
+     * Changes the delta of an existing change point, see BalanceTimeline#addDelta.
+     */
+    void addDelta(BalanceHistory entry, double diff);
+
+    void remove(BalanceHistory entry);
+
+    /**
+     * Persists the changes. Returns the number of change points inserted.
+     */
+    int save();
+}
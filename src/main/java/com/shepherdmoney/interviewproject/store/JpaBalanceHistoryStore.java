@@ -0,0 +1,137 @@
+package com.shepherdmoney.interviewproject.store;
+
+import com.shepherdmoney.interviewproject.model.BalanceHistory;
+import com.shepherdmoney.interviewproject.model.BalanceTimeline;
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.repository.BalanceChange;
+import com.shepherdmoney.interviewproject.repository.BalanceHistoryRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keeps the change points as BalanceHistory rows mapped to the card's balanceHistory
+ * collection. Updates go through the persistence context, full scans read the table with
+ * plain JDBC.
+ */
+@Component
+@ConditionalOnProperty(name = "balance-store.type", havingValue = "jpa", matchIfMissing = true)
+public class JpaBalanceHistoryStore implements BalanceHistoryStore {
+
+    private static final String SCAN_QUERY =
+            "select credit_card_id, date, delta from balance_history order by credit_card_id, date";
+
+    private final BalanceHistoryRepository balanceHistoryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    @Autowired
+    public JpaBalanceHistoryStore(BalanceHistoryRepository balanceHistoryRepository, JdbcTemplate jdbcTemplate,
+                                  @Value("${balance-export.fetch-size:10000}") int fetchSize) {
+        this.balanceHistoryRepository = balanceHistoryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public BalanceHistoryWriter open(CreditCard creditCard) {
+        return new Writer(creditCard);
+    }
+
+    @Override
+    public List<BalanceChange> findChanges(int creditCardId) {
+        return balanceHistoryRepository.findChangesByCreditCardId(creditCardId);
+    }
+
+    @Override
+    public List<BalanceChange> findChanges(int creditCardId, LocalDate afterExclusive, int limit) {
+        if (afterExclusive == null) {
+            return balanceHistoryRepository.findChangesByCreditCardId(creditCardId, PageRequest.of(0, limit));
+        }
+        return balanceHistoryRepository.findChangesByCreditCardIdAfter(creditCardId, afterExclusive, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Reads the table with a forward-only, read-only result set, so no entities are created and
+     * memory use does not depend on the size of the table.
+     */
+    @Override
+    public void forEachChange(ChangeConsumer consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SCAN_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, (RowCallbackHandler) resultSet ->
+                consumer.accept(resultSet.getInt(1), (int) resultSet.getObject(2, LocalDate.class).toEpochDay(), resultSet.getDouble(3)));
+    }
+
+    @Override
+    public int deleteChunk(Collection<Integer> creditCardIds, int limit) {
+        if (creditCardIds.isEmpty()) {
+            return 0;
+        }
+        List<Integer> ids = balanceHistoryRepository.findIdsByCreditCardIds(creditCardIds, PageRequest.of(0, limit));
+        return ids.isEmpty() ? 0 : balanceHistoryRepository.deleteByIds(ids);
+    }
+
+    /**
+     * New rows are collected and inserted with a single batched saveAll, changed deltas are
+     * written by dirty checking.
+     */
+    private class Writer implements BalanceHistoryWriter {
+
+        private final CreditCard creditCard;
+        private final List<BalanceHistory> newEntries = new ArrayList<>();
+
+        Writer(CreditCard creditCard) {
+            this.creditCard = creditCard;
+        }
+
+        @Override
+        public BalanceTimeline timeline() {
+            return creditCard.getBalanceTimeline();
+        }
+
+        @Override
+        public BalanceHistory add(LocalDate date, double delta) {
+            BalanceHistory newBalanceHistory = new BalanceHistory();
+            newBalanceHistory.setDate(date);
+            newBalanceHistory.setDelta(delta);
+            creditCard.addBalanceHistory(newBalanceHistory);
+            newEntries.add(newBalanceHistory);
+            return newBalanceHistory;
+        }
+
+        @Override
+        public void addDelta(BalanceHistory entry, double diff) {
+            timeline().addDelta(entry, diff);
+        }
+
+        @Override
+        public void remove(BalanceHistory entry) {
+            creditCard.removeBalanceHistory(entry);
+            if (!newEntries.remove(entry)) {
+                balanceHistoryRepository.delete(entry);
+            }
+        }
+
+        @Override
+        public int save() {
+            balanceHistoryRepository.saveAll(newEntries);
+            return newEntries.size();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.shepherdmoney.interviewproject.store;
+
+import com.shepherdmoney.interviewproject.model.BalanceHistory;
+import com.shepherdmoney.interviewproject.model.BalanceTimeline;
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.repository.BalanceChange;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embedded store keeping the change points in a {@link SegmentLog} next to the application,
+ * without going through the ORM.
+ *
+ * The live state is held in memory as a sorted map of epoch day to delta per card and rebuilt
+ * from the log on startup. Each update is appended as one group of PUT and REMOVE records right
+ * before the transaction that locked the card commits, so a failed append rolls the update
+ * back. If the transaction rolls back after the append, the previous state of the touched days
+ * is appended again. A crash between the append and the database commit keeps the appended
+ * group although the update was reported as failed, the card's rollups then catch up with the
+ * next update of the card. Whenever compactionThreshold full segments have accumulated since
+ * the last compaction, the live state is written into fresh segments and the old ones are
+ * deleted.
+ *
+ * Writers hold the write lock while appending and applying a group, so the log and the
+ * in-memory state always match. Readers and the compaction only need the read lock.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "balance-store.type", havingValue = "segment")
+public class SegmentBalanceHistoryStore implements BalanceHistoryStore {
+
+    // Segments are mapped into a single buffer, which is limited to 2 GB
+    private static final int MAX_SEGMENT_SIZE_MB = 2047;
+
+    private final SegmentLog segmentLog;
+    private final Map<Integer, TreeMap<Integer, Double>> changes = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    private final int compactionThreshold;
+    private final long compactionIntervalMs;
+    // Full segments left by the last compaction, only the ones added since count towards the threshold
+    private int compactedSegments;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Autowired
+    public SegmentBalanceHistoryStore(@Value("${balance-store.segment.directory:data/balance-store}") String directory,
+                                      @Value("${balance-store.segment.segment-size-mb:64}") int segmentSizeMb,
+                                      @Value("${balance-store.segment.force-on-commit:true}") boolean forceOnCommit,
+                                      @Value("${balance-store.segment.compaction-threshold:4}") int compactionThreshold,
+                                      @Value("${balance-store.segment.compaction-interval-ms:60000}") long compactionIntervalMs) throws IOException {
+        if (segmentSizeMb < 1 || segmentSizeMb > MAX_SEGMENT_SIZE_MB) {
+            throw new IllegalArgumentException("balance-store.segment.segment-size-mb must be between 1 and " + MAX_SEGMENT_SIZE_MB);
+        }
+        this.segmentLog = new SegmentLog(Paths.get(directory), segmentSizeMb * 1024 * 1024, forceOnCommit);
+        this.compactionThreshold = compactionThreshold;
+        this.compactionIntervalMs = compactionIntervalMs;
+        segmentLog.recover(this::apply);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::compactIfNeeded, compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public BalanceHistoryWriter open(CreditCard creditCard) {
+        return new Writer(creditCard.getId());
+    }
+
+    @Override
+    public List<BalanceChange> findChanges(int creditCardId) {
+        List<BalanceChange> cardChanges = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            TreeMap<Integer, Double> days = changes.get(creditCardId);
+            if (days != null) {
+                days.forEach((epochDay, delta) -> cardChanges.add(new BalanceChange(LocalDate.ofEpochDay(epochDay), delta)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return cardChanges;
+    }
+
+    @Override
+    public List<BalanceChange> findChanges(int creditCardId, LocalDate afterExclusive, int limit) {
+        List<BalanceChange> cardChanges = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            TreeMap<Integer, Double> days = changes.get(creditCardId);
+            if (days != null) {
+                Map<Integer, Double> page = afterExclusive == null ? days : days.tailMap((int) afterExclusive.toEpochDay(), false);
+                for (Map.Entry<Integer, Double> day : page.entrySet()) {
+                    if (cardChanges.size() == limit) {
+                        break;
+                    }
+                    cardChanges.add(new BalanceChange(LocalDate.ofEpochDay(day.getKey()), day.getValue()));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return cardChanges;
+    }
+
+    /**
+     * Scans card by card, so writers are only held off while a single card is read.
+     */
+    @Override
+    public void forEachChange(ChangeConsumer consumer) {
+        Set<Integer> creditCardIds;
+        lock.readLock().lock();
+        try {
+            creditCardIds = new TreeSet<>(changes.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int creditCardId : creditCardIds) {
+            for (BalanceChange change : findChanges(creditCardId)) {
+                consumer.accept(creditCardId, (int) change.getDate().toEpochDay(), change.getDelta());
+            }
+        }
+    }
+
+    /**
+     * Drops the cards entirely with a single record each, the limit is not needed here.
+     */
+    @Override
+    public int deleteChunk(Collection<Integer> creditCardIds, int limit) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (int creditCardId : creditCardIds) {
+                TreeMap<Integer, Double> days = changes.get(creditCardId);
+                if (days != null) {
+                    removed += days.size();
+                    segmentLog.write(SegmentLog.DROP_CARD, creditCardId, 0, 0.0);
+                }
+            }
+            if (removed > 0) {
+                segmentLog.commit();
+                creditCardIds.forEach(changes::remove);
+            }
+            return removed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        lock.writeLock().lock();
+        try {
+            segmentLog.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the new state of the given days of a card, a null delta removes the day.
+     */
+    private void append(int creditCardId, Map<Integer, Double> days) {
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Integer, Double> day : days.entrySet()) {
+                if (day.getValue() == null) {
+                    segmentLog.write(SegmentLog.REMOVE, creditCardId, day.getKey(), 0.0);
+                } else {
+                    segmentLog.write(SegmentLog.PUT, creditCardId, day.getKey(), day.getValue());
+                }
+            }
+            segmentLog.commit();
+            for (Map.Entry<Integer, Double> day : days.entrySet()) {
+                apply(day.getValue() == null ? SegmentLog.REMOVE : SegmentLog.PUT, creditCardId, day.getKey(),
+                        day.getValue() == null ? 0.0 : day.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(int type, int creditCardId, int epochDay, double delta) {
+        switch (type) {
+            case SegmentLog.PUT -> changes.computeIfAbsent(creditCardId, k -> new TreeMap<>()).put(epochDay, delta);
+            case SegmentLog.REMOVE -> {
+                TreeMap<Integer, Double> days = changes.get(creditCardId);
+                if (days != null) {
+                    days.remove(epochDay);
+                    if (days.isEmpty()) {
+                        changes.remove(creditCardId);
+                    }
+                }
+            }
+            case SegmentLog.DROP_CARD -> changes.remove(creditCardId);
+            case SegmentLog.RESET -> changes.clear();
+            default -> throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    // An exception would cancel the periodic compaction, it is simply tried again next time
+    private void compactIfNeeded() {
+        try {
+            synchronized (compactionLock) {
+                lock.readLock().lock();
+                try {
+                    if (segmentLog.sealedCount() - compactedSegments < compactionThreshold) {
+                        return;
+                    }
+                    // Writers are held off by the read lock, the log is only touched by this thread
+                    segmentLog.compact(() -> {
+                        for (Map.Entry<Integer, TreeMap<Integer, Double>> card : changes.entrySet()) {
+                            for (Map.Entry<Integer, Double> day : card.getValue().entrySet()) {
+                                segmentLog.write(SegmentLog.PUT, card.getKey(), day.getKey(), day.getValue());
+                            }
+                        }
+                    });
+                    compactedSegments = segmentLog.sealedCount();
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        } catch (Exception e) {
+            log.error("Compacting the balance history segments failed", e);
+        }
+    }
+
+    /**
+     * Works on a detached timeline of the card, the touched days are appended to the log before
+     * the update commits and restored if it rolls back after all.
+     */
+    private class Writer implements BalanceHistoryWriter {
+
+        private final int creditCardId;
+        private final BalanceTimeline timeline = new BalanceTimeline();
+        private final Set<LocalDate> touched = new HashSet<>();
+        private final Set<LocalDate> added = new HashSet<>();
+        // Deltas the days had when the writer was opened
+        private final Map<Integer, Double> original = new HashMap<>();
+
+        Writer(int creditCardId) {
+            this.creditCardId = creditCardId;
+            for (BalanceChange change : findChanges(creditCardId)) {
+                BalanceHistory entry = new BalanceHistory();
+                entry.setDate(change.getDate());
+                entry.setDelta(change.getDelta());
+                timeline.put(entry);
+                original.put((int) change.getDate().toEpochDay(), change.getDelta());
+            }
+        }
+
+        @Override
+        public BalanceTimeline timeline() {
+            return timeline;
+        }
+
+        @Override
+        public BalanceHistory add(LocalDate date, double delta) {
+            BalanceHistory entry = new BalanceHistory();
+            entry.setDate(date);
+            entry.setDelta(delta);
+            timeline.put(entry);
+            touched.add(date);
+            added.add(date);
+            return entry;
+        }
+
+        @Override
+        public void addDelta(BalanceHistory entry, double diff) {
+            timeline.addDelta(entry, diff);
+            touched.add(entry.getDate());
+        }
+
+        @Override
+        public void remove(BalanceHistory entry) {
+            timeline.remove(entry.getDate());
+            touched.add(entry.getDate());
+            added.remove(entry.getDate());
+        }
+
+        @Override
+        public int save() {
+            Map<Integer, Double> days = new TreeMap<>();
+            for (LocalDate date : touched) {
+                days.put((int) date.toEpochDay(), timeline.get(date).map(BalanceHistory::getDelta).orElse(null));
+            }
+            if (days.isEmpty()) {
+                return 0;
+            }
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    private boolean appended;
+
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        append(creditCardId, days);
+                        appended = true;
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (appended && status == STATUS_ROLLED_BACK) {
+                            Map<Integer, Double> restored = new TreeMap<>();
+                            days.keySet().forEach(epochDay -> restored.put(epochDay, original.get(epochDay)));
+                            append(creditCardId, restored);
+                        }
+                    }
+                });
+            } else {
+                append(creditCardId, days);
+            }
+            return added.size();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.shepherdmoney.interviewproject.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of fixed-size records spread over memory-mapped segment files of
+ * segmentSize bytes, named segment-&lt;sequence&gt;.log.
+ *
+ * Records are written in groups that end with a COMMIT record, and only complete groups are
+ * replayed on recovery. A group cut short by a crash, or a record torn halfway, is detected by
+ * its checksum and discarded together with the rest of its group. A RESET record discards
+ * everything replayed before it, which lets compaction write the full state into new segments
+ * before deleting the old ones.
+ *
+ * Not thread-safe, callers serialize access.
+ */
+final class SegmentLog implements Closeable {
+
+    /**
+     * Receives the records of committed groups on recovery.
+     */
+    @FunctionalInterface
+    interface RecordHandler {
+        void apply(int type, int creditCardId, int epochDay, double delta);
+    }
+
+    static final int PUT = 1;
+    static final int REMOVE = 2;
+    static final int DROP_CARD = 3;
+    static final int RESET = 4;
+    private static final int COMMIT = 5;
+
+    // type, card id, epoch day, delta and the CRC32 of those 20 bytes
+    private static final int RECORD_SIZE = 24;
+    private static final int CHECKSUMMED_SIZE = 20;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceOnCommit;
+    private final CRC32 crc = new CRC32();
+    private final byte[] record = new byte[RECORD_SIZE];
+
+    // Sequences of the full segments before the active one, oldest first
+    private final List<Long> sealed = new ArrayList<>();
+    private long activeSequence;
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+
+    SegmentLog(Path directory, int segmentSize, boolean forceOnCommit) {
+        this.directory = directory;
+        this.segmentSize = segmentSize / RECORD_SIZE * RECORD_SIZE;
+        this.forceOnCommit = forceOnCommit;
+    }
+
+    /**
+     * Replays the committed groups of all segments in order and positions the log after the
+     * last of them. Segments holding nothing but an incomplete group are deleted.
+     */
+    void recover(RecordHandler handler) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> sequences = listSegments();
+        PendingGroup pending = new PendingGroup();
+        long lastCommitSequence = -1;
+        int lastCommitEnd = 0;
+
+        for (long sequence : sequences) {
+            try (FileChannel channel = FileChannel.open(segmentPath(sequence))) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    int type = buffer.getInt();
+                    int creditCardId = buffer.getInt();
+                    int epochDay = buffer.getInt();
+                    double delta = buffer.getDouble();
+                    int checksum = buffer.getInt();
+                    if (type == 0 || checksum != checksum(type, creditCardId, epochDay, delta)) {
+                        break;
+                    }
+                    if (type == COMMIT) {
+                        pending.replay(handler);
+                        lastCommitSequence = sequence;
+                        lastCommitEnd = buffer.position();
+                    } else {
+                        pending.add(type, creditCardId, epochDay, delta);
+                    }
+                }
+            }
+        }
+
+        for (long sequence : sequences) {
+            if (sequence > lastCommitSequence) {
+                Files.delete(segmentPath(sequence));
+            } else if (sequence < lastCommitSequence) {
+                sealed.add(sequence);
+            }
+        }
+        if (lastCommitSequence < 0) {
+            openSegment(1, 0);
+        } else {
+            openSegment(lastCommitSequence, lastCommitEnd);
+            // Clear the discarded tail so that it can never be mistaken for new records
+            for (int position = lastCommitEnd; position < segmentSize; position++) {
+                active.put(position, (byte) 0);
+            }
+        }
+    }
+
+    void write(int type, int creditCardId, int epochDay, double delta) throws IOException {
+        if (active.remaining() < RECORD_SIZE) {
+            roll();
+        }
+        active.putInt(type);
+        active.putInt(creditCardId);
+        active.putInt(epochDay);
+        active.putDouble(delta);
+        active.putInt(checksum(type, creditCardId, epochDay, delta));
+    }
+
+    /**
+     * Ends the current group, after which it survives a crash.
+     */
+    void commit() throws IOException {
+        write(COMMIT, 0, 0, 0.0);
+        if (forceOnCommit) {
+            active.force();
+        }
+    }
+
+    int sealedCount() {
+        return sealed.size();
+    }
+
+    /**
+     * Writes the state produced by stateWriter as a single RESET group into new segments and
+     * deletes all segments before them. A crash before the group is committed leaves the old
+     * segments in place, a crash while deleting them is harmless since the RESET group
+     * supersedes whatever remains.
+     */
+    void compact(StateWriter stateWriter) throws IOException {
+        roll();
+        List<Long> obsolete = new ArrayList<>(sealed);
+        write(RESET, 0, 0, 0.0);
+        stateWriter.writeState();
+        write(COMMIT, 0, 0, 0.0);
+        active.force();
+        for (long sequence : obsolete) {
+            Files.deleteIfExists(segmentPath(sequence));
+        }
+        sealed.removeAll(obsolete);
+    }
+
+    @FunctionalInterface
+    interface StateWriter {
+        void writeState() throws IOException;
+    }
+
+    @Override
+    public void close() throws IOException {
+        active.force();
+        activeChannel.close();
+    }
+
+    private void roll() throws IOException {
+        active.force();
+        activeChannel.close();
+        sealed.add(activeSequence);
+        openSegment(activeSequence + 1, 0);
+    }
+
+    private void openSegment(long sequence, int position) throws IOException {
+        activeSequence = sequence;
+        activeChannel = FileChannel.open(segmentPath(sequence), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        active.position(position);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("segment-") && name.endsWith(".log"))
+                    .map(name -> Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("segment-%012d.log", sequence));
+    }
+
+    private int checksum(int type, int creditCardId, int epochDay, double delta) {
+        long bits = Double.doubleToRawLongBits(delta);
+        putInt(0, type);
+        putInt(4, creditCardId);
+        putInt(8, epochDay);
+        putInt(12, (int) (bits >>> 32));
+        putInt(16, (int) bits);
+        crc.reset();
+        crc.update(record, 0, CHECKSUMMED_SIZE);
+        return (int) crc.getValue();
+    }
+
+    private void putInt(int offset, int value) {
+        record[offset] = (byte) (value >>> 24);
+        record[offset + 1] = (byte) (value >>> 16);
+        record[offset + 2] = (byte) (value >>> 8);
+        record[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Records of the group being replayed, applied once its COMMIT is read.
+     */
+    private static final class PendingGroup {
+        private int size;
+        private int[] types = new int[64];
+        private int[] creditCardIds = new int[64];
+        private int[] epochDays = new int[64];
+        private double[] deltas = new double[64];
+
+        void add(int type, int creditCardId, int epochDay, double delta) {
+            if (size == types.length) {
+                types = Arrays.copyOf(types, size * 2);
+                creditCardIds = Arrays.copyOf(creditCardIds, size * 2);
+                epochDays = Arrays.copyOf(epochDays, size * 2);
+                deltas = Arrays.copyOf(deltas, size * 2);
+            }
+            types[size] = type;
+            creditCardIds[size] = creditCardId;
+            epochDays[size] = epochDay;
+            deltas[size] = delta;
+            size += 1;
+        }
+
+        void replay(RecordHandler handler) {
+            for (int i = 0; i < size; i++) {
+                handler.apply(types[i], creditCardIds[i], epochDays[i], deltas[i]);
+            }
+            size = 0;
+        }
+    }
+}
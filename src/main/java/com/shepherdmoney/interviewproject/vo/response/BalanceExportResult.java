@@ -0,0 +1,15 @@
+package com.shepherdmoney.interviewproject.vo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class BalanceExportResult {
+
+    private String file;
+
+    private long rows;
+}
@@ -0,0 +1,26 @@
+package com.shepherdmoney.interviewproject.vo.response;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class BalanceRollupView {
+
+    private LocalDate periodStart;
+
+    private LocalDate periodEnd;
+
+    // Days of the period covered by the history
+    private int days;
+
+    private double endBalance;
+
+    private double averageBalance;
+
+    private double maxBalance;
+}
@@ -0,0 +1,17 @@
+package com.shepherdmoney.interviewproject.vo.response;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class BalanceUpdateResult {
+
+    private int updatedCards;
+
+    private List<String> failedCardNumbers;
+}
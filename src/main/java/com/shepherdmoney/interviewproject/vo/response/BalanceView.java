@@ -0,0 +1,17 @@
+package com.shepherdmoney.interviewproject.vo.response;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class BalanceView {
+
+    private LocalDate date;
+
+    private double balance;
+}
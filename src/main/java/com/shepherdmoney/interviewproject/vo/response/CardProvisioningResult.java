@@ -0,0 +1,18 @@
+package com.shepherdmoney.interviewproject.vo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class CardProvisioningResult {
+
+    private String cardNumber;
+
+    // Id of the created card, -1 if the record was rejected
+    private int cardId;
+
+    private String error;
+}
@@ -9,6 +9,9 @@ import lombok.Data;
 @AllArgsConstructor
 public class CreditCardView {
 
+    // Also the cursor for keyset pagination of /credit-card:all
+    private int id;
+
     private String issuanceBank;
 
     private String number;
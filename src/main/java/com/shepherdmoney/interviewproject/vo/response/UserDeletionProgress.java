@@ -0,0 +1,25 @@
+package com.shepherdmoney.interviewproject.vo.response;
+
+import lombok.Data;
+
+/**
+ * Progress of the background removal of a deleted user. Updated by the deletion worker while
+ * it runs, so the fields are volatile.
+ */
+@Data
+public class UserDeletionProgress {
+
+    public enum Status {
+        IN_PROGRESS,
+        COMPLETED,
+        FAILED
+    }
+
+    private final int userId;
+
+    private volatile Status status = Status.IN_PROGRESS;
+
+    private volatile long deletedBalanceHistoryRows;
+
+    private volatile long deletedCreditCards;
+}
@@ -0,0 +1,151 @@
+package com.shepherdmoney.interviewproject.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.model.User;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.vo.request.AddCreditCardToUserPayload;
+import com.shepherdmoney.interviewproject.vo.response.CardProvisioningResult;
+import com.shepherdmoney.interviewproject.vo.response.CreditCardView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:credit-card-controller;DB_CLOSE_DELAY=-1")
+class CreditCardControllerTest {
+
+    private static final AtomicInteger CARD_NUMBERS = new AtomicInteger();
+
+    @Autowired
+    private CreditCardController creditCardController;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CreditCardRepository creditCardRepository;
+
+    @Test
+    void bulkAddAnswersOkWhenEveryCardIsAdded() {
+        int userId = newUser();
+
+        ResponseEntity<List<CardProvisioningResult>> response = creditCardController.addCreditCardsToUsers(
+                new AddCreditCardToUserPayload[]{card(userId, nextNumber()), card(userId, nextNumber())});
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).allSatisfy(result -> assertThat(result.getCardId()).isPositive());
+    }
+
+    @Test
+    void bulkAddAnswersMultiStatusWhenSomeCardsAreAdded() {
+        int userId = newUser();
+        String number = nextNumber();
+
+        ResponseEntity<List<CardProvisioningResult>> response = creditCardController.addCreditCardsToUsers(
+                new AddCreditCardToUserPayload[]{card(userId, number), card(userId, number), card(-1, nextNumber())});
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.MULTI_STATUS);
+        List<CardProvisioningResult> results = response.getBody();
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).getCardId()).isPositive();
+        assertThat(results.get(0).getError()).isNull();
+        assertThat(results.get(1).getCardId()).isEqualTo(-1);
+        assertThat(results.get(1).getError()).isNotNull();
+        assertThat(results.get(2).getCardId()).isEqualTo(-1);
+        assertThat(results.get(2).getError()).isNotNull();
+    }
+
+    @Test
+    void bulkAddAnswersBadRequestWhenNoCardIsAdded() {
+        ResponseEntity<List<CardProvisioningResult>> response = creditCardController.addCreditCardsToUsers(
+                new AddCreditCardToUserPayload[]{card(-1, nextNumber())});
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody()).singleElement().satisfies(result -> assertThat(result.getError()).isNotNull());
+    }
+
+    @Test
+    void keysetPagesFollowEachOther() {
+        int userId = newUser();
+        List<Integer> cardIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            cardIds.add(newCard(userId));
+        }
+
+        List<Integer> pagedIds = new ArrayList<>();
+        int afterId = 0;
+        while (true) {
+            List<CreditCardView> page = creditCardController.getAllCardOfUser(userId, null, 2, afterId).getBody();
+            if (page.isEmpty()) {
+                break;
+            }
+            assertThat(page.size()).isLessThanOrEqualTo(2);
+            page.forEach(view -> pagedIds.add(view.getId()));
+            afterId = page.get(page.size() - 1).getId();
+        }
+
+        assertThat(pagedIds).isEqualTo(cardIds);
+    }
+
+    @Test
+    void keysetPageSkipsCardsOfOtherUsers() {
+        int userId = newUser();
+        int otherUserId = newUser();
+        int first = newCard(userId);
+        newCard(otherUserId);
+        int second = newCard(userId);
+
+        List<CreditCardView> page = creditCardController.getAllCardOfUser(userId, null, 10, first).getBody();
+
+        assertThat(page).extracting(CreditCardView::getId).containsExactly(second);
+    }
+
+    @Test
+    void offsetPageAndKeysetPageAgree() {
+        int userId = newUser();
+        for (int i = 0; i < 4; i++) {
+            newCard(userId);
+        }
+
+        List<CreditCardView> firstPage = creditCardController.getAllCardOfUser(userId, 0, 2, null).getBody();
+        List<CreditCardView> secondPage = creditCardController.getAllCardOfUser(userId, 1, 2, null).getBody();
+
+        assertThat(creditCardController.getAllCardOfUser(userId, null, 2, firstPage.get(1).getId()).getBody()).isEqualTo(secondPage);
+    }
+
+    private int newCard(int userId) {
+        CreditCard card = new CreditCard();
+        card.setIssuanceBank("Test Bank");
+        card.setNumber(nextNumber());
+        card.setOwner(userRepository.getReferenceById(userId));
+        return creditCardRepository.save(card).getId();
+    }
+
+    private int newUser() {
+        User user = new User();
+        user.setName("owner");
+        user.setEmail("owner@example.com");
+        return userRepository.save(user).getId();
+    }
+
+    private static String nextNumber() {
+        return String.format("5200%012d", CARD_NUMBERS.incrementAndGet());
+    }
+
+    private static AddCreditCardToUserPayload card(int userId, String number) {
+        AddCreditCardToUserPayload payload = new AddCreditCardToUserPayload();
+        payload.setUserId(userId);
+        payload.setCardIssuanceBank("Test Bank");
+        payload.setCardNumber(number);
+        return payload;
+    }
+}
@@ -0,0 +1,101 @@
+package com.shepherdmoney.interviewproject.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+class BalanceDeltaIndexTest {
+
+    private static final LocalDate DAY = LocalDate.of(2023, 4, 10);
+
+    @Test
+    void emptyIndexSumsToZero() {
+        assertThat(new BalanceDeltaIndex().prefixSum(DAY)).isZero();
+    }
+
+    @Test
+    void prefixSumIncludesTheDayAndEveryEarlierDay() {
+        BalanceDeltaIndex index = new BalanceDeltaIndex();
+        index.add(DAY, 100.0);
+        index.add(DAY.plusDays(3), 50.0);
+        index.add(DAY.plusDays(5), -30.0);
+
+        assertThat(index.prefixSum(DAY.minusDays(1))).isZero();
+        assertThat(index.prefixSum(DAY)).isEqualTo(100.0);
+        assertThat(index.prefixSum(DAY.plusDays(2))).isEqualTo(100.0);
+        assertThat(index.prefixSum(DAY.plusDays(3))).isEqualTo(150.0);
+        assertThat(index.prefixSum(DAY.plusDays(5))).isEqualTo(120.0);
+    }
+
+    @Test
+    void daysAfterTheEndCarryTheLastSum() {
+        BalanceDeltaIndex index = new BalanceDeltaIndex();
+        index.add(DAY, 100.0);
+
+        assertThat(index.prefixSum(DAY.plusYears(10))).isEqualTo(100.0);
+    }
+
+    @Test
+    void pointUpdateShiftsEveryLaterDay() {
+        BalanceDeltaIndex index = new BalanceDeltaIndex();
+        index.add(DAY, 100.0);
+        index.add(DAY.plusDays(4), 20.0);
+
+        index.add(DAY.plusDays(2), 5.0);
+        index.add(DAY, -40.0);
+
+        assertThat(index.prefixSum(DAY)).isEqualTo(60.0);
+        assertThat(index.prefixSum(DAY.plusDays(2))).isEqualTo(65.0);
+        assertThat(index.prefixSum(DAY.plusDays(4))).isEqualTo(85.0);
+    }
+
+    @Test
+    void growsAfterTheEnd() {
+        BalanceDeltaIndex index = new BalanceDeltaIndex();
+        index.add(DAY, 1.0);
+        // Well past the initial capacity, then past the doubled one
+        index.add(DAY.plusDays(40), 2.0);
+        index.add(DAY.plusDays(1000), 4.0);
+
+        assertThat(index.prefixSum(DAY.plusDays(39))).isEqualTo(1.0);
+        assertThat(index.prefixSum(DAY.plusDays(40))).isEqualTo(3.0);
+        assertThat(index.prefixSum(DAY.plusDays(999))).isEqualTo(3.0);
+        assertThat(index.prefixSum(DAY.plusDays(1000))).isEqualTo(7.0);
+    }
+
+    @Test
+    void growsBeforeTheStart() {
+        BalanceDeltaIndex index = new BalanceDeltaIndex();
+        index.add(DAY, 1.0);
+        index.add(DAY.minusDays(3), 2.0);
+        index.add(DAY.minusDays(500), 4.0);
+
+        assertThat(index.prefixSum(DAY.minusDays(501))).isZero();
+        assertThat(index.prefixSum(DAY.minusDays(500))).isEqualTo(4.0);
+        assertThat(index.prefixSum(DAY.minusDays(3))).isEqualTo(6.0);
+        assertThat(index.prefixSum(DAY)).isEqualTo(7.0);
+    }
+
+    @Test
+    void matchesRunningSumsUnderRandomUpdates() {
+        Random random = new Random(42);
+        BalanceDeltaIndex index = new BalanceDeltaIndex();
+        TreeMap<LocalDate, Long> expected = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            LocalDate day = DAY.plusDays(random.nextInt(4000) - 2000);
+            // Whole amounts keep the sums exact
+            long delta = random.nextInt(201) - 100;
+            index.add(day, delta);
+            expected.merge(day, delta, Long::sum);
+        }
+        for (int offset = -2010; offset < 2010; offset += 7) {
+            LocalDate day = DAY.plusDays(offset);
+            long sum = expected.headMap(day, true).values().stream().mapToLong(Long::longValue).sum();
+            assertThat(index.prefixSum(day)).isEqualTo((double) sum);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.shepherdmoney.interviewproject.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+class BalanceHistoryCodecTest {
+
+    private static final LocalDate DAY = LocalDate.of(2023, 4, 10);
+
+    @Test
+    void decodesLegacyHistoryIntoChangePoints() throws IOException {
+        // Today's entry first, then the older days in chronological order
+        String json = "[[\"2023-04-16\",900.0],[\"2023-04-10\",800.0],[\"2023-04-11\",1000.0],"
+                + "[\"2023-04-12\",1000.0],[\"2023-04-13\",1100.0]]";
+
+        BalanceHistorySnapshot snapshot = BalanceHistoryCodec.decode(json);
+
+        assertThat(snapshot.getEpochDays()).containsExactly(day(0), day(1), day(3), day(6));
+        assertThat(snapshot.getDeltas()).containsExactly(800.0, 200.0, 100.0, -200.0);
+    }
+
+    @Test
+    void keepsTheFirstDayEvenWithoutBalance() throws IOException {
+        BalanceHistorySnapshot snapshot = BalanceHistoryCodec.decode("[[\"2023-04-10\",0.0],[\"2023-04-11\",0.0]]");
+
+        assertThat(snapshot.getEpochDays()).containsExactly(day(0));
+        assertThat(snapshot.getDeltas()).containsExactly(0.0);
+    }
+
+    @Test
+    void decodesEmptyHistory() throws IOException {
+        assertThat(BalanceHistoryCodec.decode("[]").size()).isZero();
+    }
+
+    @Test
+    void snapshotOfTimelineListsChangePointsInOrder() {
+        BalanceTimeline timeline = new BalanceTimeline();
+        timeline.put(entry(DAY.plusDays(5), -50.0));
+        timeline.put(entry(DAY, 100.0));
+
+        BalanceHistorySnapshot snapshot = BalanceHistoryCodec.snapshotOf(timeline);
+
+        assertThat(snapshot.getEpochDays()).containsExactly(day(0), day(5));
+        assertThat(snapshot.getDeltas()).containsExactly(100.0, -50.0);
+    }
+
+    @Test
+    void rejectsInputThatIsNotAnArray() {
+        assertThatThrownBy(() -> BalanceHistoryCodec.decode("{\"epochDays\":[]}")).isInstanceOf(IOException.class);
+    }
+
+    private static int day(int offset) {
+        return (int) DAY.plusDays(offset).toEpochDay();
+    }
+
+    private static BalanceHistory entry(LocalDate date, double delta) {
+        BalanceHistory entry = new BalanceHistory();
+        entry.setDate(date);
+        entry.setDelta(delta);
+        return entry;
+    }
+}
@@ -0,0 +1,166 @@
+package com.shepherdmoney.interviewproject.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.model.User;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.vo.response.BalanceView;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:balance-history-service;DB_CLOSE_DELAY=-1")
+class BalanceHistoryServiceTest {
+
+    private static final AtomicInteger CARD_NUMBERS = new AtomicInteger();
+
+    @Autowired
+    private BalanceHistoryService balanceHistoryService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CreditCardRepository creditCardRepository;
+
+    @Test
+    void readsLegacyHistoryBeforeTheFirstUpdate() {
+        LocalDate start = LocalDate.now().minusDays(5);
+        CreditCard card = newCard(legacyHistory(start));
+
+        List<BalanceView> history = balanceHistoryService.getBalanceHistory(card.getNumber()).orElseThrow();
+
+        assertThat(history).hasSize(6);
+        assertThat(history.get(0)).isEqualTo(new BalanceView(LocalDate.now(), 300.0));
+        assertThat(history.get(1)).isEqualTo(new BalanceView(start, 100.0));
+        assertThat(history.get(2)).isEqualTo(new BalanceView(start.plusDays(1), 200.0));
+        assertThat(history.get(3)).isEqualTo(new BalanceView(start.plusDays(2), 300.0));
+        assertThat(history.get(5)).isEqualTo(new BalanceView(start.plusDays(4), 300.0));
+    }
+
+    @Test
+    void migratesLegacyHistoryOnUpdate() {
+        LocalDate start = LocalDate.now().minusDays(5);
+        CreditCard card = newCard(legacyHistory(start));
+
+        assertThat(balanceHistoryService.customAddBalanceEntry(List.of(TestPayloads.of(card.getNumber(), start.plusDays(1), 250.0)))).isEqualTo(1);
+
+        assertThat(creditCardRepository.findById(card.getId()).orElseThrow().getBalanceHistoryString()).isNull();
+        List<BalanceView> history = balanceHistoryService.getBalanceHistory(card.getNumber()).orElseThrow();
+        assertThat(history.get(2)).isEqualTo(new BalanceView(start.plusDays(1), 250.0));
+        assertThat(history.get(3)).isEqualTo(new BalanceView(start.plusDays(2), 350.0));
+        assertThat(history.get(0)).isEqualTo(new BalanceView(LocalDate.now(), 350.0));
+    }
+
+    @Test
+    void keepsUnreadableLegacyHistory() {
+        CreditCard card = newCard("not a history");
+
+        assertThat(balanceHistoryService.customAddBalanceEntry(List.of(TestPayloads.of(card.getNumber(), LocalDate.now(), 10.0)))).isEqualTo(-1);
+
+        assertThat(creditCardRepository.findById(card.getId()).orElseThrow().getBalanceHistoryString()).isEqualTo("not a history");
+    }
+
+    @Test
+    void backdatedUpdateShiftsEveryLaterDay() {
+        LocalDate start = LocalDate.now().minusDays(10);
+        CreditCard card = newCard(null);
+        update(card, start, 100.0);
+        update(card, start.plusDays(5), 200.0);
+
+        update(card, start.plusDays(2), 150.0);
+
+        List<BalanceView> history = balanceHistoryService.getBalanceHistory(card.getNumber()).orElseThrow();
+        assertThat(history).hasSize(11);
+        assertThat(history.get(1)).isEqualTo(new BalanceView(start, 100.0));
+        assertThat(history.get(2)).isEqualTo(new BalanceView(start.plusDays(1), 100.0));
+        assertThat(history.get(3)).isEqualTo(new BalanceView(start.plusDays(2), 150.0));
+        assertThat(history.get(5)).isEqualTo(new BalanceView(start.plusDays(4), 150.0));
+        assertThat(history.get(6)).isEqualTo(new BalanceView(start.plusDays(5), 250.0));
+        assertThat(history.get(10)).isEqualTo(new BalanceView(start.plusDays(9), 250.0));
+        assertThat(history.get(0)).isEqualTo(new BalanceView(LocalDate.now(), 250.0));
+    }
+
+    @Test
+    void updateBeforeTheFirstDayStartsTheHistoryEarlier() {
+        LocalDate start = LocalDate.now().minusDays(5);
+        CreditCard card = newCard(null);
+        update(card, start, 100.0);
+
+        update(card, start.minusDays(3), 40.0);
+
+        List<BalanceView> history = balanceHistoryService.getBalanceHistory(card.getNumber()).orElseThrow();
+        assertThat(history).hasSize(9);
+        assertThat(history.get(1)).isEqualTo(new BalanceView(start.minusDays(3), 40.0));
+        // The difference to the old first balance carries over to every later day
+        assertThat(history.get(4)).isEqualTo(new BalanceView(start, 40.0));
+        assertThat(history.get(0)).isEqualTo(new BalanceView(LocalDate.now(), 40.0));
+    }
+
+    @Test
+    void payloadsOfOneUploadApplyInDateOrder() {
+        LocalDate start = LocalDate.now().minusDays(4);
+        CreditCard card = newCard(null);
+
+        assertThat(balanceHistoryService.customAddBalanceEntry(List.of(
+                TestPayloads.of(card.getNumber(), start.plusDays(2), 300.0),
+                TestPayloads.of(card.getNumber(), start, 100.0),
+                TestPayloads.of(card.getNumber(), start.plusDays(2), 350.0)))).isEqualTo(1);
+
+        List<BalanceView> history = balanceHistoryService.getBalanceHistory(card.getNumber()).orElseThrow();
+        assertThat(history.get(1)).isEqualTo(new BalanceView(start, 100.0));
+        assertThat(history.get(2)).isEqualTo(new BalanceView(start.plusDays(1), 100.0));
+        // Of two payloads for the same day the later one wins
+        assertThat(history.get(3)).isEqualTo(new BalanceView(start.plusDays(2), 350.0));
+        assertThat(history.get(0)).isEqualTo(new BalanceView(LocalDate.now(), 350.0));
+    }
+
+    @Test
+    void replayingABalanceChangesNothing() {
+        LocalDate start = LocalDate.now().minusDays(3);
+        CreditCard card = newCard(null);
+        update(card, start, 100.0);
+        update(card, start.plusDays(2), 120.0);
+        List<BalanceView> before = balanceHistoryService.getBalanceHistory(card.getNumber()).orElseThrow();
+
+        update(card, start.plusDays(2), 120.0);
+        update(card, start.plusDays(1), 100.0);
+
+        assertThat(balanceHistoryService.getBalanceHistory(card.getNumber()).orElseThrow()).isEqualTo(before);
+    }
+
+    @Test
+    void unknownCardIsRejected() {
+        assertThat(balanceHistoryService.customAddBalanceEntry(List.of(TestPayloads.of("5199999999999999", LocalDate.now(), 1.0)))).isEqualTo(-1);
+        assertThat(balanceHistoryService.getBalanceHistory("5199999999999999")).isEmpty();
+    }
+
+    private void update(CreditCard card, LocalDate date, double amount) {
+        assertThat(balanceHistoryService.customAddBalanceEntry(List.of(TestPayloads.of(card.getNumber(), date, amount)))).isEqualTo(1);
+    }
+
+    // Balances 100, 200 and 300 on the first three days, today's entry first as in the old format
+    private static String legacyHistory(LocalDate start) {
+        return "[[\"" + start.plusDays(2) + "\",300.0],[\"" + start + "\",100.0],[\"" + start.plusDays(1) + "\",200.0]]";
+    }
+
+    private CreditCard newCard(String balanceHistoryString) {
+        User user = new User();
+        user.setName("owner");
+        user.setEmail("owner@example.com");
+        user = userRepository.save(user);
+        CreditCard card = new CreditCard();
+        card.setIssuanceBank("Test Bank");
+        card.setNumber(String.format("5100%012d", CARD_NUMBERS.incrementAndGet()));
+        card.setOwner(user);
+        card.setBalanceHistoryString(balanceHistoryString);
+        return creditCardRepository.save(card);
+    }
+}
@@ -0,0 +1,138 @@
+package com.shepherdmoney.interviewproject.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.shepherdmoney.interviewproject.model.BalanceRollupPeriod;
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.model.User;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.vo.response.BalanceRollupView;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:balance-rollup-service;DB_CLOSE_DELAY=-1")
+class BalanceRollupServiceTest {
+
+    private static final AtomicInteger CARD_NUMBERS = new AtomicInteger();
+    private static final LocalDate JANUARY = LocalDate.of(2024, 1, 1);
+    private static final LocalDate FEBRUARY = LocalDate.of(2024, 2, 1);
+
+    @Autowired
+    private BalanceRollupService balanceRollupService;
+
+    @Autowired
+    private BalanceHistoryService balanceHistoryService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CreditCardRepository creditCardRepository;
+
+    @Test
+    void monthlyRollupsFollowTheDailyBalances() {
+        CreditCard card = newCard(newUser());
+        update(card, JANUARY, 100.0);
+        update(card, JANUARY.plusDays(15), 200.0);
+
+        List<BalanceRollupView> months = balanceRollupService.rollupsOf(card.getNumber(), BalanceRollupPeriod.MONTH, JANUARY, FEBRUARY).orElseThrow();
+
+        assertThat(months).hasSize(2);
+        assertRollup(months.get(0), JANUARY, LocalDate.of(2024, 1, 31), 31, 200.0, (15 * 100.0 + 16 * 200.0) / 31, 200.0);
+        // Months after the last change carry its balance for every day
+        assertRollup(months.get(1), FEBRUARY, LocalDate.of(2024, 2, 29), 29, 200.0, 200.0, 200.0);
+    }
+
+    @Test
+    void backdatedUpdateRefreshesTheAffectedRollups() {
+        CreditCard card = newCard(newUser());
+        update(card, JANUARY, 100.0);
+        update(card, JANUARY.plusDays(15), 200.0);
+        balanceRollupService.rollupsOf(card.getNumber(), BalanceRollupPeriod.MONTH, JANUARY, FEBRUARY);
+
+        update(card, JANUARY.plusDays(9), 150.0);
+
+        List<BalanceRollupView> months = balanceRollupService.rollupsOf(card.getNumber(), BalanceRollupPeriod.MONTH, JANUARY, FEBRUARY).orElseThrow();
+        assertRollup(months.get(0), JANUARY, LocalDate.of(2024, 1, 31), 31, 250.0, (9 * 100.0 + 6 * 150.0 + 16 * 250.0) / 31, 250.0);
+        assertRollup(months.get(1), FEBRUARY, LocalDate.of(2024, 2, 29), 29, 250.0, 250.0, 250.0);
+    }
+
+    @Test
+    void summaryCombinesTheMonthsOfTheRange() {
+        CreditCard card = newCard(newUser());
+        update(card, JANUARY, 100.0);
+        update(card, JANUARY.plusDays(15), 200.0);
+
+        BalanceRollupView summary = balanceRollupService.summaryOf(card.getNumber(), JANUARY, FEBRUARY).orElseThrow();
+
+        assertRollup(summary, JANUARY, LocalDate.of(2024, 2, 29), 60, 200.0, (15 * 100.0 + 45 * 200.0) / 60, 200.0);
+    }
+
+    @Test
+    void weeksStartOnMonday() {
+        CreditCard card = newCard(newUser());
+        // 2024-01-03 is a Wednesday
+        update(card, LocalDate.of(2024, 1, 3), 70.0);
+
+        List<BalanceRollupView> weeks = balanceRollupService.rollupsOf(card.getNumber(), BalanceRollupPeriod.WEEK, JANUARY, LocalDate.of(2024, 1, 8)).orElseThrow();
+
+        assertThat(weeks).hasSize(2);
+        assertRollup(weeks.get(0), JANUARY, LocalDate.of(2024, 1, 7), 5, 70.0, 70.0, 70.0);
+        assertRollup(weeks.get(1), LocalDate.of(2024, 1, 8), LocalDate.of(2024, 1, 14), 7, 70.0, 70.0, 70.0);
+    }
+
+    @Test
+    void userRollupsAddUpTheCards() {
+        User user = newUser();
+        update(newCard(user), JANUARY, 100.0);
+        update(newCard(user), JANUARY.plusDays(15), 50.0);
+
+        List<BalanceRollupView> months = balanceRollupService.userRollupsOf(user.getId(), BalanceRollupPeriod.MONTH, JANUARY, JANUARY);
+
+        assertThat(months).hasSize(1);
+        // Days before the second card existed count as a balance of 0, the maximum is per card
+        assertRollup(months.get(0), JANUARY, LocalDate.of(2024, 1, 31), 31, 150.0, (31 * 100.0 + 16 * 50.0) / 31, 100.0);
+    }
+
+    @Test
+    void unknownCardHasNoRollups() {
+        assertThat(balanceRollupService.rollupsOf("5499999999999999", BalanceRollupPeriod.MONTH, JANUARY, FEBRUARY)).isEmpty();
+    }
+
+    private static void assertRollup(BalanceRollupView rollup, LocalDate periodStart, LocalDate periodEnd, int days,
+                                     double endBalance, double averageBalance, double maxBalance) {
+        assertThat(rollup.getPeriodStart()).isEqualTo(periodStart);
+        assertThat(rollup.getPeriodEnd()).isEqualTo(periodEnd);
+        assertThat(rollup.getDays()).isEqualTo(days);
+        assertThat(rollup.getEndBalance()).isEqualTo(endBalance);
+        assertThat(rollup.getAverageBalance()).isCloseTo(averageBalance, within(1e-9));
+        assertThat(rollup.getMaxBalance()).isEqualTo(maxBalance);
+    }
+
+    private void update(CreditCard card, LocalDate date, double amount) {
+        assertThat(balanceHistoryService.customAddBalanceEntry(List.of(TestPayloads.of(card.getNumber(), date, amount)))).isEqualTo(1);
+    }
+
+    private User newUser() {
+        User user = new User();
+        user.setName("owner");
+        user.setEmail("owner@example.com");
+        return userRepository.save(user);
+    }
+
+    private CreditCard newCard(User user) {
+        CreditCard card = new CreditCard();
+        card.setIssuanceBank("Test Bank");
+        card.setNumber(String.format("5400%012d", CARD_NUMBERS.incrementAndGet()));
+        card.setOwner(user);
+        return creditCardRepository.save(card);
+    }
+}
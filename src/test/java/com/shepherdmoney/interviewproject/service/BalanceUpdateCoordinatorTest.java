@@ -0,0 +1,133 @@
+package com.shepherdmoney.interviewproject.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.shepherdmoney.interviewproject.vo.request.UpdateBalancePayload;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+class BalanceUpdateCoordinatorTest {
+
+    private static final String NUMBER = "5100000000000001";
+
+    private final BalanceHistoryService balanceHistoryService = mock(BalanceHistoryService.class);
+    private final BalanceUpdateDeduplicator balanceUpdateDeduplicator = mock(BalanceUpdateDeduplicator.class);
+    private final BalanceUpdateCoordinator coordinator =
+            new BalanceUpdateCoordinator(balanceHistoryService, balanceUpdateDeduplicator, 3);
+
+    @Test
+    void writersQueuedBehindTheLeaderAreMergedInArrivalOrder() throws Exception {
+        CountDownLatch applying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<Double>> applied = Collections.synchronizedList(new ArrayList<>());
+        when(balanceHistoryService.customAddBalanceEntry(anyList())).thenAnswer(invocation -> {
+            List<UpdateBalancePayload> payloads = invocation.getArgument(0);
+            applied.add(payloads.stream().map(UpdateBalancePayload::getBalanceAmount).toList());
+            applying.countDown();
+            release.await();
+            return 1;
+        });
+
+        CompletableFuture<Integer> leader = CompletableFuture.supplyAsync(() -> coordinator.apply(NUMBER, payloads(10.0)));
+        assertThat(applying.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Integer> second = CompletableFuture.supplyAsync(() -> coordinator.apply(NUMBER, payloads(20.0)));
+        Thread.sleep(200);
+        CompletableFuture<Integer> third = CompletableFuture.supplyAsync(() -> coordinator.apply(NUMBER, payloads(30.0)));
+        Thread.sleep(200);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(third.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(applied).containsExactly(List.of(10.0), List.of(20.0, 30.0));
+    }
+
+    @Test
+    void optimisticLockFailuresAreRetried() {
+        when(balanceHistoryService.customAddBalanceEntry(anyList()))
+                .thenThrow(new OptimisticLockingFailureException("conflict"))
+                .thenThrow(new OptimisticLockingFailureException("conflict"))
+                .thenReturn(1);
+
+        assertThat(coordinator.apply(NUMBER, payloads(10.0))).isEqualTo(1);
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() {
+        when(balanceHistoryService.customAddBalanceEntry(anyList())).thenThrow(new OptimisticLockingFailureException("conflict"));
+
+        assertThat(coordinator.apply(NUMBER, payloads(10.0))).isEqualTo(-1);
+        verify(balanceUpdateDeduplicator).markApplied(NUMBER, null);
+    }
+
+    @Test
+    void replayOfTheLastAppliedGroupSkipsTheUpdate() {
+        byte[] fingerprint = {1, 2, 3};
+        when(balanceUpdateDeduplicator.fingerprint(anyList())).thenReturn(fingerprint);
+        when(balanceUpdateDeduplicator.isLastApplied(NUMBER, fingerprint)).thenReturn(true);
+
+        assertThat(coordinator.apply(NUMBER, payloads(10.0))).isEqualTo(1);
+        verify(balanceHistoryService, never()).customAddBalanceEntry(anyList());
+    }
+
+    @Test
+    void successfulUpdateRecordsItsFingerprint() {
+        byte[] fingerprint = {1, 2, 3};
+        when(balanceUpdateDeduplicator.fingerprint(anyList())).thenReturn(fingerprint);
+        when(balanceHistoryService.customAddBalanceEntry(anyList())).thenReturn(1);
+
+        assertThat(coordinator.apply(NUMBER, payloads(10.0))).isEqualTo(1);
+        verify(balanceUpdateDeduplicator).markApplied(NUMBER, fingerprint);
+    }
+
+    @Test
+    void errorFailsTheLeaderAndReleasesTheCard() {
+        when(balanceHistoryService.customAddBalanceEntry(anyList()))
+                .thenThrow(new StackOverflowError())
+                .thenReturn(1);
+
+        assertThatThrownBy(() -> coordinator.apply(NUMBER, payloads(10.0))).isInstanceOf(StackOverflowError.class);
+
+        assertThat(coordinator.apply(NUMBER, payloads(20.0))).isEqualTo(1);
+    }
+
+    @Test
+    void errorFailsTheWritersQueuedBehindTheLeader() throws Exception {
+        CountDownLatch applying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(balanceHistoryService.customAddBalanceEntry(anyList())).thenAnswer(invocation -> {
+            applying.countDown();
+            release.await();
+            throw new StackOverflowError();
+        });
+
+        CompletableFuture<Integer> leader = CompletableFuture.supplyAsync(() -> coordinator.apply(NUMBER, payloads(10.0)));
+        assertThat(applying.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Integer> follower = CompletableFuture.supplyAsync(() -> coordinator.apply(NUMBER, payloads(20.0)));
+        // Give the follower time to queue behind the leader
+        Thread.sleep(200);
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasRootCauseInstanceOf(StackOverflowError.class);
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasRootCauseInstanceOf(StackOverflowError.class);
+    }
+
+    private static List<UpdateBalancePayload> payloads(double amount) {
+        return List.of(TestPayloads.of(NUMBER, LocalDate.now(), amount));
+    }
+}
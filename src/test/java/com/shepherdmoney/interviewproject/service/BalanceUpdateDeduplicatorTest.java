@@ -0,0 +1,103 @@
+package com.shepherdmoney.interviewproject.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.shepherdmoney.interviewproject.repository.CreditCardOwnership;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class BalanceUpdateDeduplicatorTest {
+
+    private static final String NUMBER = "5100000000000001";
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 1);
+
+    private final CreditCardLookupCache creditCardLookupCache = mock(CreditCardLookupCache.class);
+    private final BalanceUpdateDeduplicator deduplicator =
+            new BalanceUpdateDeduplicator(creditCardLookupCache, new SimpleMeterRegistry(), 100, 60, true, 100);
+
+    @Test
+    void repeatedKeyGetsTheFirstResponse() {
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThat(deduplicator.once("key", body("a"), runs::incrementAndGet)).contains(1);
+        assertThat(deduplicator.once("key", body("a"), runs::incrementAndGet)).contains(1);
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void keyReusedWithAnotherBodyIsRejected() {
+        deduplicator.once("key", body("a"), () -> 1);
+
+        assertThat(deduplicator.once("key", body("b"), () -> 2)).isEmpty();
+    }
+
+    @Test
+    void failedUpdateReleasesTheKey() {
+        assertThatThrownBy(() -> deduplicator.once("key", body("a"), () -> {
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(deduplicator.once("key", body("a"), () -> 2)).contains(2);
+    }
+
+    @Test
+    void fingerprintKeepsTheLastBalanceOfADay() {
+        byte[] fingerprint = deduplicator.fingerprint(List.of(
+                TestPayloads.of(NUMBER, DAY.plusDays(1), 20.0),
+                TestPayloads.of(NUMBER, DAY, 5.0),
+                TestPayloads.of(NUMBER, DAY, 10.0)));
+
+        assertThat(fingerprint).isEqualTo(deduplicator.fingerprint(List.of(
+                TestPayloads.of(NUMBER, DAY, 10.0),
+                TestPayloads.of(NUMBER, DAY.plusDays(1), 20.0))));
+        assertThat(fingerprint).isNotEqualTo(deduplicator.fingerprint(List.of(
+                TestPayloads.of(NUMBER, DAY, 5.0),
+                TestPayloads.of(NUMBER, DAY.plusDays(1), 20.0))));
+    }
+
+    @Test
+    void payloadWithoutDateHasNoFingerprint() {
+        assertThat(deduplicator.fingerprint(List.of(TestPayloads.of(NUMBER, null, 10.0)))).isNull();
+    }
+
+    @Test
+    void lastAppliedGroupIsRecognizedUntilForgotten() {
+        when(creditCardLookupCache.get(NUMBER)).thenReturn(Optional.of(new CreditCardOwnership(7, 1)));
+        byte[] first = deduplicator.fingerprint(List.of(TestPayloads.of(NUMBER, DAY, 10.0)));
+        byte[] second = deduplicator.fingerprint(List.of(TestPayloads.of(NUMBER, DAY, 20.0)));
+
+        deduplicator.markApplied(NUMBER, first);
+        assertThat(deduplicator.isLastApplied(NUMBER, first)).isTrue();
+        assertThat(deduplicator.isLastApplied(NUMBER, second)).isFalse();
+
+        deduplicator.markApplied(NUMBER, second);
+        assertThat(deduplicator.isLastApplied(NUMBER, first)).isFalse();
+
+        deduplicator.markApplied(NUMBER, null);
+        assertThat(deduplicator.isLastApplied(NUMBER, second)).isFalse();
+    }
+
+    @Test
+    void disabledFingerprintsNeverMatch() {
+        BalanceUpdateDeduplicator disabled =
+                new BalanceUpdateDeduplicator(creditCardLookupCache, new SimpleMeterRegistry(), 100, 60, false, 100);
+
+        assertThat(disabled.fingerprint(List.of(TestPayloads.of(NUMBER, DAY, 10.0)))).isNull();
+        assertThat(disabled.isLastApplied(NUMBER, null)).isFalse();
+    }
+
+    private static byte[] body(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+}
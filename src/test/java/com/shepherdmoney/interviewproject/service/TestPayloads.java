@@ -0,0 +1,19 @@
+package com.shepherdmoney.interviewproject.service;
+
+import com.shepherdmoney.interviewproject.vo.request.UpdateBalancePayload;
+
+import java.time.LocalDate;
+
+final class TestPayloads {
+
+    private TestPayloads() {
+    }
+
+    static UpdateBalancePayload of(String creditCardNumber, LocalDate date, double amount) {
+        UpdateBalancePayload payload = new UpdateBalancePayload();
+        payload.setCreditCardNumber(creditCardNumber);
+        payload.setBalanceDate(date);
+        payload.setBalanceAmount(amount);
+        return payload;
+    }
+}
@@ -0,0 +1,114 @@
+package com.shepherdmoney.interviewproject.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.shepherdmoney.interviewproject.model.CreditCard;
+import com.shepherdmoney.interviewproject.model.User;
+import com.shepherdmoney.interviewproject.repository.CreditCardRepository;
+import com.shepherdmoney.interviewproject.repository.UserRepository;
+import com.shepherdmoney.interviewproject.vo.response.UserDeletionProgress;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:user-deletion-service;DB_CLOSE_DELAY=-1")
+class UserDeletionServiceTest {
+
+    private static final AtomicInteger CARD_NUMBERS = new AtomicInteger();
+
+    @Autowired
+    private UserDeletionService userDeletionService;
+
+    @Autowired
+    private BalanceHistoryService balanceHistoryService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CreditCardRepository creditCardRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void finishedDeletionStaysQueryable() throws InterruptedException {
+        CreditCard card = newCard();
+        assertThat(balanceHistoryService.customAddBalanceEntry(List.of(TestPayloads.of(card.getNumber(), LocalDate.now(), 10.0)))).isEqualTo(1);
+
+        assertThat(userDeletionService.deleteUser(card.getOwner().getId())).isTrue();
+
+        UserDeletionProgress progress = awaitFinished(card.getOwner().getId());
+        assertThat(progress.getStatus()).isEqualTo(UserDeletionProgress.Status.COMPLETED);
+        assertThat(progress.getDeletedCreditCards()).isEqualTo(1);
+        assertThat(userRepository.findById(card.getOwner().getId())).isEmpty();
+    }
+
+    @Test
+    void rejectsUpdatesOfCardsOfDeletedUsers() throws InterruptedException {
+        CreditCard card = newCard();
+
+        assertThat(userDeletionService.deleteUser(card.getOwner().getId())).isTrue();
+
+        assertThat(balanceHistoryService.customAddBalanceEntry(List.of(TestPayloads.of(card.getNumber(), LocalDate.now(), 10.0)))).isEqualTo(-1);
+        awaitFinished(card.getOwner().getId());
+    }
+
+    @Test
+    void updateInFlightWhenTheUserIsDeletedFails() throws Exception {
+        CreditCard card = newCard();
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch deleted = new CountDownLatch(1);
+
+        CompletableFuture<Void> update = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertThat(creditCardRepository.findByIdForUpdate(card.getId())).isPresent();
+            loaded.countDown();
+            try {
+                deleted.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertThat(loaded.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(userDeletionService.deleteUser(card.getOwner().getId())).isTrue();
+        deleted.countDown();
+
+        assertThatThrownBy(() -> update.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(OptimisticLockingFailureException.class);
+        awaitFinished(card.getOwner().getId());
+    }
+
+    private UserDeletionProgress awaitFinished(int userId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            UserDeletionProgress progress = userDeletionService.progressOf(userId).orElseThrow();
+            if (progress.getStatus() != UserDeletionProgress.Status.IN_PROGRESS) {
+                return progress;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("Deletion of user " + userId + " did not finish");
+    }
+
+    private CreditCard newCard() {
+        User user = new User();
+        user.setName("owner");
+        user.setEmail("owner@example.com");
+        user = userRepository.save(user);
+        CreditCard card = new CreditCard();
+        card.setIssuanceBank("Test Bank");
+        card.setNumber(String.format("5300%012d", CARD_NUMBERS.incrementAndGet()));
+        card.setOwner(user);
+        return creditCardRepository.save(card);
+    }
+}
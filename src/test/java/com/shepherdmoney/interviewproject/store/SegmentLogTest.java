@@ -0,0 +1,171 @@
+package com.shepherdmoney.interviewproject.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentLogTest {
+
+    // Ten records per segment
+    private static final int SEGMENT_SIZE = 240;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysCommittedGroupsAfterRestart() throws IOException {
+        SegmentLog log = open(new State());
+        log.write(SegmentLog.PUT, 1, 100, 5.0);
+        log.write(SegmentLog.PUT, 1, 101, -2.0);
+        log.commit();
+        log.write(SegmentLog.REMOVE, 1, 101, 0.0);
+        log.commit();
+        log.close();
+
+        State state = new State();
+        open(state).close();
+        assertThat(state.days).isEqualTo(Map.of("1:100", 5.0));
+    }
+
+    @Test
+    void discardsGroupWithoutCommit() throws IOException {
+        SegmentLog log = open(new State());
+        log.write(SegmentLog.PUT, 1, 100, 5.0);
+        log.commit();
+        log.write(SegmentLog.PUT, 1, 101, 7.0);
+        log.close();
+
+        State state = new State();
+        open(state).close();
+        assertThat(state.days).isEqualTo(Map.of("1:100", 5.0));
+    }
+
+    @Test
+    void discardsTornGroupAndAppendsAfterTheLastCommit() throws IOException {
+        SegmentLog log = open(new State());
+        log.write(SegmentLog.PUT, 1, 100, 5.0);
+        log.commit();
+        log.write(SegmentLog.PUT, 2, 100, 3.0);
+        log.write(SegmentLog.PUT, 2, 101, 4.0);
+        log.commit();
+        log.close();
+
+        // Flip a byte of the delta of the second group's first record, its checksum no longer matches
+        corrupt(segments().get(0), 2 * 24 + 12);
+
+        State recovered = new State();
+        SegmentLog reopened = open(recovered);
+        assertThat(recovered.days).isEqualTo(Map.of("1:100", 5.0));
+        reopened.write(SegmentLog.PUT, 3, 100, 1.0);
+        reopened.commit();
+        reopened.close();
+
+        State state = new State();
+        open(state).close();
+        assertThat(state.days).isEqualTo(Map.of("1:100", 5.0, "3:100", 1.0));
+    }
+
+    @Test
+    void deletesSegmentsHoldingOnlyAnIncompleteGroup() throws IOException {
+        SegmentLog log = open(new State());
+        log.write(SegmentLog.PUT, 1, 100, 5.0);
+        log.commit();
+        // Twelve uncommitted records spill into a second segment
+        for (int i = 0; i < 12; i++) {
+            log.write(SegmentLog.PUT, 2, i, 1.0);
+        }
+        log.close();
+        assertThat(segments()).hasSize(2);
+
+        State state = new State();
+        open(state).close();
+        assertThat(state.days).isEqualTo(Map.of("1:100", 5.0));
+        assertThat(segments()).hasSize(1);
+    }
+
+    @Test
+    void keepsCompactedStateAfterRestart() throws IOException {
+        State live = new State();
+        SegmentLog log = open(live);
+        for (int day = 0; day < 30; day++) {
+            log.write(SegmentLog.PUT, 1, day, day);
+            log.commit();
+            live.apply(SegmentLog.PUT, 1, day, day);
+        }
+        log.write(SegmentLog.DROP_CARD, 1, 0, 0.0);
+        log.write(SegmentLog.PUT, 2, 7, 2.5);
+        log.commit();
+        live.apply(SegmentLog.DROP_CARD, 1, 0, 0.0);
+        live.apply(SegmentLog.PUT, 2, 7, 2.5);
+        assertThat(log.sealedCount()).isGreaterThan(1);
+
+        log.compact(() -> {
+            for (Map.Entry<String, Double> day : live.days.entrySet()) {
+                String[] key = day.getKey().split(":");
+                log.write(SegmentLog.PUT, Integer.parseInt(key[0]), Integer.parseInt(key[1]), day.getValue());
+            }
+        });
+        assertThat(log.sealedCount()).isEqualTo(0);
+        log.write(SegmentLog.PUT, 2, 8, 1.0);
+        log.commit();
+        log.close();
+
+        State state = new State();
+        open(state).close();
+        assertThat(state.days).isEqualTo(Map.of("2:7", 2.5, "2:8", 1.0));
+        // Only the segment written by the compaction is left
+        assertThat(segments()).hasSize(1);
+    }
+
+    private SegmentLog open(State state) throws IOException {
+        SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, true);
+        log.recover(state::apply);
+        return log;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static void corrupt(Path segment, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, position);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0xFF));
+            buffer.rewind();
+            channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Replayed state keyed by "card:day", applied the way the store applies records.
+     */
+    private static final class State {
+        private final Map<String, Double> days = new TreeMap<>();
+
+        void apply(int type, int creditCardId, int epochDay, double delta) {
+            switch (type) {
+                case SegmentLog.PUT -> days.put(creditCardId + ":" + epochDay, delta);
+                case SegmentLog.REMOVE -> days.remove(creditCardId + ":" + epochDay);
+                case SegmentLog.DROP_CARD -> days.keySet().removeIf(key -> key.startsWith(creditCardId + ":"));
+                case SegmentLog.RESET -> days.clear();
+                default -> throw new IllegalStateException("Unknown record type " + type);
+            }
+        }
+    }
+}